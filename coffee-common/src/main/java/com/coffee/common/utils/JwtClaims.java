@@ -0,0 +1,52 @@
+package com.coffee.common.utils;
+
+/**
+ * 已验证的JWT声明（不可变）
+ * 由 JwtUtils.verify 在签名和过期时间校验通过后创建
+ */
+public final class JwtClaims {
+    
+    private final String userId;
+    
+    private final String username;
+    
+    /**
+     * 签发时间（毫秒），令牌未携带时为0
+     */
+    private final long issuedAt;
+    
+    /**
+     * 过期时间（毫秒），令牌未携带时为 Long.MAX_VALUE
+     */
+    private final long expiresAt;
+    
+    public JwtClaims(String userId, String username, long issuedAt, long expiresAt) {
+        this.userId = userId;
+        this.username = username;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+    
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+    
+    /**
+     * 指定时间是否已过期
+     */
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+}
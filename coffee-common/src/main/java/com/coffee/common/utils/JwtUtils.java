@@ -1,8 +1,10 @@
 package com.coffee.common.utils;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.TextCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +28,11 @@ public class JwtUtils {
      */
     private static final long EXPIRE_TIME = 7 * 24 * 60 * 60 * 1000;
     
+    /**
+     * 解析时使用的密钥字节（与 setSigningKey(String) 相同，按Base64解码），只解码一次
+     */
+    private static final byte[] SECRET_BYTES = TextCodec.BASE64.decode(SECRET);
+    
     /**
      * 生成JWT令牌
      */
@@ -51,13 +58,41 @@ public class JwtUtils {
                 .compact();
     }
     
+    /**
+     * 验证令牌并返回声明：签名和过期时间只解析、校验一次
+     * @return 令牌无效或已过期时返回null
+     */
+    public static JwtClaims verify(String token) {
+        Claims claims;
+        try {
+            claims = Jwts.parser()
+                    .setSigningKey(SECRET_BYTES)
+                    .parseClaimsJws(token)
+                    .getBody();
+        } catch (ExpiredJwtException e) {
+            log.debug("JWT已过期: {}", e.getMessage());
+            return null;
+        } catch (Exception e) {
+            log.error("JWT解析失败: {}", e.getMessage());
+            return null;
+        }
+        Date issuedAt = claims.getIssuedAt();
+        Date expiration = claims.getExpiration();
+        Object userId = claims.get("userId");
+        return new JwtClaims(
+                userId != null ? userId.toString() : null,
+                claims.getSubject(),
+                issuedAt != null ? issuedAt.getTime() : 0L,
+                expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+    }
+    
     /**
      * 从令牌中获取数据声明
      */
     public static Claims getClaimsFromToken(String token) {
         try {
             return Jwts.parser()
-                    .setSigningKey(SECRET)
+                    .setSigningKey(SECRET_BYTES)
                     .parseClaimsJws(token)
                     .getBody();
         } catch (Exception e) {
@@ -70,16 +105,16 @@ public class JwtUtils {
      * 从令牌中获取用户名
      */
     public static String getUsernameFromToken(String token) {
-        Claims claims = getClaimsFromToken(token);
-        return claims != null ? claims.getSubject() : null;
+        JwtClaims claims = verify(token);
+        return claims != null ? claims.getUsername() : null;
     }
     
     /**
      * 从令牌中获取用户ID
      */
     public static String getUserIdFromToken(String token) {
-        Claims claims = getClaimsFromToken(token);
-        return claims != null ? (String) claims.get("userId") : null;
+        JwtClaims claims = verify(token);
+        return claims != null ? claims.getUserId() : null;
     }
     
     /**
@@ -98,24 +133,15 @@ public class JwtUtils {
      * 验证令牌
      */
     public static Boolean validateToken(String token, String username) {
-        String tokenUsername = getUsernameFromToken(token);
-        return (username.equals(tokenUsername) && !isTokenExpired(token));
+        JwtClaims claims = verify(token);
+        return claims != null && username.equals(claims.getUsername());
     }
     
     /**
      * 验证令牌（不验证用户名，只验证是否有效和过期）
      */
     public static Boolean validateToken(String token) {
-        try {
-            Claims claims = getClaimsFromToken(token);
-            if (claims == null) {
-                return false;
-            }
-            // 检查是否过期
-            return !isTokenExpired(token);
-        } catch (Exception e) {
-            log.error("Token验证失败: {}", e.getMessage());
-            return false;
-        }
+        // 解析时已校验过期时间，无需再次解析
+        return verify(token) != null;
     }
 }
@@ -3,12 +3,14 @@ package com.coffee.couponservice;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * 优惠券服务启动类
  */
 @SpringBootApplication
 @EnableDiscoveryClient
+@EnableScheduling
 public class CouponServiceApplication {
     
     public static void main(String[] args) {
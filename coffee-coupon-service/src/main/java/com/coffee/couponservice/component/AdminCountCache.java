@@ -0,0 +1,65 @@
+package com.coffee.couponservice.component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 管理端列表总数缓存
+ * 按 "范围 + 筛选条件" 缓存COUNT结果，翻页时不再重复统计；
+ * 本节点写入后按范围清除，优惠券变更广播（coupon:cache:invalidate）同样清除优惠券范围，其余情况由过期时间兜底
+ */
+@Component
+public class AdminCountCache implements MessageListener {
+    
+    public static final String COUPON = "coupon";
+    
+    public static final String SECKILL = "seckill";
+    
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+    
+    @Value("${coupon.admin.count-cache.ttl-ms:60000}")
+    private long ttlMillis;
+    
+    private Cache<String, Long> counts;
+    
+    @PostConstruct
+    public void init() {
+        counts = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .build();
+        listenerContainer.addMessageListener(this, new ChannelTopic(CouponLocalCache.CHANNEL));
+    }
+    
+    /**
+     * 获取总数，未命中时调用loader统计
+     */
+    public long get(String scope, Supplier<Long> loader, Object... filters) {
+        return counts.get(scope + ":" + Arrays.toString(filters), key -> loader.get());
+    }
+    
+    /**
+     * 清除指定范围的所有总数
+     */
+    public void invalidate(String scope) {
+        counts.asMap().keySet().removeIf(key -> key.startsWith(scope + ":"));
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        invalidate(COUPON);
+    }
+}
@@ -0,0 +1,236 @@
+package com.coffee.couponservice.component;
+
+import com.coffee.couponservice.entity.Coupon;
+import com.coffee.couponservice.mapper.CouponMapper;
+import com.coffee.couponservice.vo.PublicCouponVO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 可领取优惠券列表快照
+ *
+ * 列表只在以下情况重建，请求链路不再查询数据库、不再逐条构建VO：
+ * 1. 优惠券增删改（订阅 coupon:cache:invalidate 广播，下一个检查周期重建）
+ * 2. 到达下一个时间点：列表中优惠券的结束时间、下一张优惠券的开始时间
+ * 3. 超过最大存活时间（广播丢失时兜底）
+ * 快照不可变，每张优惠券的静态字段预先序列化为JSON片段，剩余库存相关字段由请求时从Redis叠加。
+ */
+@Slf4j
+@Component
+public class AvailableCouponSnapshot implements MessageListener {
+
+    /**
+     * 请求时叠加的库存相关字段
+     */
+    private static final String[] DYNAMIC_FIELDS = {"used", "stock", "remain", "remainCount", "left", "leftCount"};
+
+    @Autowired
+    private CouponMapper couponMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${coupon.snapshot.max-age-ms:60000}")
+    private long maxAgeMillis;
+
+    private volatile Snapshot current;
+
+    private volatile boolean dirty = true;
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CouponLocalCache.CHANNEL));
+    }
+
+    /**
+     * 当前快照，尚未构建时同步构建
+     */
+    public Snapshot get() {
+        Snapshot snapshot = current;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = current;
+                if (snapshot == null) {
+                    snapshot = rebuild();
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${coupon.snapshot.check-interval-ms:500}")
+    public void refresh() {
+        Snapshot snapshot = current;
+        LocalDateTime now = LocalDateTime.now();
+        boolean expired = snapshot != null && (System.currentTimeMillis() - snapshot.builtAt >= maxAgeMillis
+                || (snapshot.nextChangeAt != null && !now.isBefore(snapshot.nextChangeAt)));
+        if (!dirty && !expired) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            // 保留旧快照，下个周期重试
+            dirty = true;
+            log.error("重建可领取优惠券快照失败", e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        dirty = true;
+    }
+
+    private Snapshot rebuild() {
+        // 先清除标记，重建期间到达的变更会触发下一次重建
+        dirty = false;
+        List<Coupon> coupons = couponMapper.selectAvailableCoupons();
+        LocalDateTime nextChangeAt = couponMapper.selectNextStartTime();
+
+        List<Entry> entries = new ArrayList<>(coupons.size());
+        CRC32 crc = new CRC32();
+        for (Coupon coupon : coupons) {
+            byte[] head = serializeStatic(coupon);
+            crc.update(head);
+            int total = coupon.getTotalCount() == null ? 0 : coupon.getTotalCount();
+            int used = coupon.getUsedCount() == null ? 0 : coupon.getUsedCount();
+            entries.add(new Entry(coupon.getId(), total, Math.max(0, total - used), head));
+
+            // 优惠券在结束时间之后的下一秒离开列表
+            if (coupon.getEndTime() != null) {
+                LocalDateTime leaveAt = coupon.getEndTime().plusSeconds(1);
+                if (nextChangeAt == null || leaveAt.isBefore(nextChangeAt)) {
+                    nextChangeAt = leaveAt;
+                }
+            }
+        }
+
+        Snapshot snapshot = new Snapshot(Collections.unmodifiableList(entries), crc.getValue(),
+                nextChangeAt, System.currentTimeMillis());
+        current = snapshot;
+        log.debug("重建可领取优惠券快照: 数量={}, 下次变化时间={}", entries.size(), nextChangeAt);
+        return snapshot;
+    }
+
+    /**
+     * 序列化静态字段，去掉结尾的 '}'，请求时在后面追加库存相关字段
+     */
+    private byte[] serializeStatic(Coupon c) {
+        PublicCouponVO vo = new PublicCouponVO();
+        vo.setId(c.getId());
+        vo.setTitle(c.getName());
+        vo.setName(c.getName());
+        BigDecimal discount = c.getDiscountValue() == null ? null : BigDecimal.valueOf(c.getDiscountValue());
+        BigDecimal threshold = c.getMinAmount() == null ? null : BigDecimal.valueOf(c.getMinAmount());
+        vo.setDiscountAmount(discount);
+        vo.setAmount(discount);
+        vo.setThreshold(threshold);
+        vo.setMinAmount(threshold);
+        vo.setType(c.getType());
+        vo.setStartTime(c.getStartTime());
+        vo.setExpireTime(c.getEndTime());
+        vo.setEndTime(c.getEndTime());
+        vo.setTotal(c.getTotalCount() == null ? 0 : c.getTotalCount());
+        vo.setStatus(c.getStatus());
+
+        // 与Spring MVC使用同一个ObjectMapper，日期等格式与原接口一致
+        ObjectNode node = objectMapper.valueToTree(vo);
+        for (String field : DYNAMIC_FIELDS) {
+            node.remove(field);
+        }
+        try {
+            String json = objectMapper.writeValueAsString(node);
+            return json.substring(0, json.length() - 1).getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化优惠券失败: " + c.getId(), e);
+        }
+    }
+
+    /**
+     * 不可变快照
+     */
+    public static class Snapshot {
+        private final List<Entry> entries;
+        private final long staticHash;
+        private final LocalDateTime nextChangeAt;
+        private final long builtAt;
+
+        Snapshot(List<Entry> entries, long staticHash, LocalDateTime nextChangeAt, long builtAt) {
+            this.entries = entries;
+            this.staticHash = staticHash;
+            this.nextChangeAt = nextChangeAt;
+            this.builtAt = builtAt;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * 静态部分的摘要，与内容相关而与节点无关，不同实例生成的ETag一致
+         */
+        public long getStaticHash() {
+            return staticHash;
+        }
+    }
+
+    /**
+     * 快照中的一张优惠券
+     */
+    public static class Entry {
+        private final Long couponId;
+        private final int total;
+        private final int fallbackStock;
+        private final byte[] head;
+
+        Entry(Long couponId, int total, int fallbackStock, byte[] head) {
+            this.couponId = couponId;
+            this.total = total;
+            this.fallbackStock = fallbackStock;
+            this.head = head;
+        }
+
+        public Long getCouponId() {
+            return couponId;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Redis库存未初始化时使用的剩余数量（快照构建时的数据库值）
+         */
+        public int getFallbackStock() {
+            return fallbackStock;
+        }
+
+        public byte[] getHead() {
+            return head;
+        }
+    }
+}
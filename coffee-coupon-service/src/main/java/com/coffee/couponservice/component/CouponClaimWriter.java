@@ -0,0 +1,160 @@
+package com.coffee.couponservice.component;
+
+import com.coffee.couponservice.mapper.CouponMapper;
+import com.coffee.couponservice.mapper.UserCouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 领券结果异步批量落库
+ * 
+ * 领券请求只执行一次Lua脚本，脚本扣减库存的同时向Redis Stream追加领取事件，不占用数据库连接。
+ * 后台按消费组读取事件，按优惠券分组：每组一条多行 INSERT IGNORE 写入用户优惠券
+ * （已存在的领取记录由唯一键跳过），再按实际插入行数累加 used_count，同一事务提交后ACK。
+ * 节点下线后其pending事件由存活节点接管，事件流只裁剪已ACK的部分。
+ */
+@Slf4j
+@Component
+public class CouponClaimWriter {
+    
+    /**
+     * 领券事件流
+     */
+    public static final String STREAM_KEY = "coupon:stream:claim";
+    
+    private static final String GROUP = "coupon-claim";
+    
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    
+    @Autowired
+    private UserCouponMapper userCouponMapper;
+    
+    @Autowired
+    private CouponMapper couponMapper;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Autowired
+    private StreamConsumerSupport streamConsumerSupport;
+    
+    @Value("${coupon.claim.writer.batch-size:500}")
+    private int batchSize;
+    
+    private String consumerName;
+    
+    @PostConstruct
+    public void init() {
+        try {
+            consumerName = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            consumerName = "coupon-service";
+        }
+        
+        try {
+            stringRedisTemplate.opsForStream().createGroup(STREAM_KEY, ReadOffset.from("0"), GROUP);
+            log.info("创建领券事件消费组: stream={}, group={}", STREAM_KEY, GROUP);
+        } catch (Exception e) {
+            // 消费组已存在（BUSYGROUP）
+            log.debug("领券事件消费组已存在: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 是否有尚未落库的领取事件（未投递或已投递未ACK）
+     * 积压期间Redis库存已扣减而数据库尚未写入，对账任务据此暂停修复
+     */
+    public boolean hasBacklog() {
+        return streamConsumerSupport.hasBacklog(STREAM_KEY, GROUP);
+    }
+    
+    /**
+     * 定时刷新：先接管其他节点的空闲事件并重放本消费者未ACK的事件，再处理新事件
+     */
+    @Scheduled(fixedDelayString = "${coupon.claim.writer.flush-interval-ms:200}")
+    public void flush() {
+        try {
+            streamConsumerSupport.claimIdle(STREAM_KEY, GROUP, consumerName);
+            flush(ReadOffset.from("0"));
+            int read;
+            do {
+                read = flush(ReadOffset.lastConsumed());
+            } while (read >= batchSize);
+            // 只裁掉已ACK的事件，未落库的领取不会丢失
+            streamConsumerSupport.trimAcknowledged(STREAM_KEY);
+        } catch (Exception e) {
+            log.error("领券结果落库失败", e);
+        }
+    }
+    
+    /**
+     * 读取一批事件，按优惠券分组落库并ACK
+     * @return 本批读取的事件数
+     */
+    private int flush(ReadOffset offset) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                Consumer.from(GROUP, consumerName),
+                StreamReadOptions.empty().count(batchSize),
+                StreamOffset.create(STREAM_KEY, offset));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        
+        Map<Long, List<Long>> usersByCoupon = new LinkedHashMap<>();
+        Map<Long, List<RecordId>> recordsByCoupon = new HashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            Object couponId = record.getValue().get("couponId");
+            Object userId = record.getValue().get("userId");
+            if (couponId == null || userId == null) {
+                // 无法解析的事件直接ACK，避免反复重放
+                stringRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, record.getId());
+                continue;
+            }
+            Long id = Long.valueOf(couponId.toString());
+            usersByCoupon.computeIfAbsent(id, k -> new ArrayList<>()).add(Long.valueOf(userId.toString()));
+            recordsByCoupon.computeIfAbsent(id, k -> new ArrayList<>()).add(record.getId());
+        }
+        
+        for (Map.Entry<Long, List<Long>> entry : usersByCoupon.entrySet()) {
+            Long couponId = entry.getKey();
+            List<Long> userIds = entry.getValue();
+            try {
+                Integer inserted = transactionTemplate.execute(status -> {
+                    // 状态1-未使用
+                    int rows = userCouponMapper.batchInsertIfAbsent(couponId, userIds, 1);
+                    if (rows > 0) {
+                        couponMapper.incrementUsedCount(couponId, rows);
+                    }
+                    return rows;
+                });
+                stringRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP,
+                        recordsByCoupon.get(couponId).toArray(new RecordId[0]));
+                log.info("领券结果落库: 优惠券ID={}, 事件={}, 新增={}", couponId, userIds.size(), inserted);
+            } catch (Exception e) {
+                // 不ACK，下个周期从pending列表重放
+                log.error("领券结果落库失败: 优惠券ID={}, 事件={}", couponId, userIds.size(), e);
+            }
+        }
+        return records.size();
+    }
+}
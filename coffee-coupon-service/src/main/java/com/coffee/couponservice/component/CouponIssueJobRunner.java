@@ -0,0 +1,503 @@
+package com.coffee.couponservice.component;
+
+import com.coffee.common.result.Result;
+import com.coffee.couponservice.dto.CouponCount;
+import com.coffee.couponservice.dto.IssueBatchRequest;
+import com.coffee.couponservice.entity.Coupon;
+import com.coffee.couponservice.mapper.CouponMapper;
+import com.coffee.couponservice.mapper.UserCouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量发券任务（营销活动定向发放）
+ *
+ * 提交时只登记任务，由后台线程按块处理，每块：
+ * 1. 一次管道判断用户是否已领取（与领券共用 coupon:user:{couponId} 记录）
+ * 2. 按未领取人数原子预占Redis领券库存（coupon:stock:{couponId}），库存不足时只发放预占到的部分
+ * 3. 预占到的用户一条多行 INSERT IGNORE 写入用户优惠券，同一事务内按插入行数累加一次 used_count，
+ *    已存在的记录占用的预占库存归还
+ * 4. 提交后批量写入领取记录，最后推进进度
+ * 批量发放与领券共用库存，不会超过 total_count；库存耗尽时任务停在第一个未发放的用户并标记失败，
+ * 增加库存后可以继续执行。
+ * 进度保存在Redis（coupon:issue:job:{jobId}），进程重启或节点宕机后由其他节点从上次提交的位置继续；
+ * 某块提交后、进度推进前中断时，重做该块会被唯一键跳过，不会重复发放。
+ * 同一任务通过分布式锁保证只在一个节点上执行。
+ */
+@Slf4j
+@Component
+public class CouponIssueJobRunner {
+
+    public static final String STATUS_PREPARING = "PREPARING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private static final String JOB_KEY_PREFIX = "coupon:issue:job:";
+
+    private static final String LOCK_KEY_PREFIX = "coupon:issue:lock:";
+
+    /**
+     * 未完成的任务ID集合，供恢复使用
+     */
+    private static final String ACTIVE_JOBS_KEY = "coupon:issue:jobs";
+
+    // 用户优惠券状态：未使用
+    private static final int STATUS_UNUSED = 1;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private UserCouponMapper userCouponMapper;
+
+    @Autowired
+    private CouponMapper couponMapper;
+
+    @Autowired
+    private CouponLocalCache couponLocalCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${coupon.claim.participant-tracker:SET}")
+    private ParticipantTracker participantTracker;
+
+    @Value("${coupon.issue.chunk-size:2000}")
+    private int chunkSize;
+
+    @Value("${coupon.issue.job-ttl-hours:72}")
+    private long jobTtlHours;
+
+    @Value("${coupon.issue.shutdown-wait-ms:5000}")
+    private long shutdownWaitMillis;
+
+    // 预占领券库存脚本：最多预占剩余库存
+    private DefaultRedisScript<Long> stockReserveScript;
+
+    // 归还库存脚本：库存键不存在时不生成库存
+    private DefaultRedisScript<Long> stockReturnScript;
+
+    private ExecutorService executor;
+
+    /**
+     * 停机标记：当前块处理完后退出，任务保留给其他节点
+     */
+    private volatile boolean stopping;
+
+    /**
+     * 本节点已排队或执行中的任务
+     */
+    private final Set<String> localJobs = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        stockReserveScript = new DefaultRedisScript<>();
+        stockReserveScript.setResultType(Long.class);
+        stockReserveScript.setLocation(new ClassPathResource("lua/coupon_stock_reserve.lua"));
+
+        stockReturnScript = new DefaultRedisScript<>();
+        stockReturnScript.setResultType(Long.class);
+        stockReturnScript.setLocation(new ClassPathResource("lua/seckill_stock_return.lua"));
+
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "coupon-issue-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 停机：不再接收任务，等待当前块处理完；超时后中断，未完成的任务保留给其他节点
+     */
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(shutdownWaitMillis, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 提交批量发券任务
+     * @return 任务ID，通过 /coupon/issue-batch/{jobId} 查询进度
+     */
+    public Result<String> submit(Long couponId, IssueBatchRequest request) {
+        boolean hasUsers = request.getUserIds() != null && !request.getUserIds().isEmpty();
+        boolean hasSegment = StringUtils.hasText(request.getSegmentKey());
+        if (hasUsers == hasSegment) {
+            return Result.paramError("用户列表和用户分群必须且只能指定一个");
+        }
+        Coupon coupon = couponLocalCache.get(couponId);
+        if (coupon == null) {
+            return Result.error("优惠券不存在");
+        }
+        if (coupon.getStatus() == null || coupon.getStatus() != 1) {
+            return Result.error("优惠券未启用");
+        }
+        if (coupon.getEndTime() != null && coupon.getEndTime().isBefore(LocalDateTime.now())) {
+            return Result.error("优惠券已过期");
+        }
+
+        String jobId = UUID.randomUUID().toString().replace("-", "");
+        Map<String, String> job = new HashMap<>();
+        job.put("couponId", couponId.toString());
+        job.put("offset", "0");
+        job.put("issued", "0");
+        job.put("skipped", "0");
+        job.put("createdAt", String.valueOf(System.currentTimeMillis()));
+        if (hasUsers) {
+            // 用户列表在提交时写入，任务直接进入执行阶段
+            pushUsers(jobId, request.getUserIds());
+            job.put("status", STATUS_RUNNING);
+            job.put("total", String.valueOf(request.getUserIds().size()));
+        } else {
+            // 分群成员可能很多，由任务线程复制
+            job.put("status", STATUS_PREPARING);
+            job.put("segmentKey", request.getSegmentKey());
+        }
+        stringRedisTemplate.opsForHash().putAll(jobKey(jobId), job);
+        stringRedisTemplate.expire(jobKey(jobId), Duration.ofHours(jobTtlHours));
+        stringRedisTemplate.opsForSet().add(ACTIVE_JOBS_KEY, jobId);
+
+        log.info("提交批量发券任务: jobId={}, 优惠券ID={}, 用户数={}, 分群={}",
+                jobId, couponId, hasUsers ? request.getUserIds().size() : null, request.getSegmentKey());
+        schedule(jobId);
+        return Result.success("任务已提交", jobId);
+    }
+
+    /**
+     * 查询任务进度，任务不存在时返回null
+     */
+    public Map<String, Object> progress(String jobId) {
+        Map<Object, Object> job = stringRedisTemplate.opsForHash().entries(jobKey(jobId));
+        if (job.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> progress = new LinkedHashMap<>();
+        job.forEach((field, value) -> progress.put(field.toString(), value));
+        long total = parseLong(job.get("total"));
+        long offset = parseLong(job.get("offset"));
+        progress.put("percent", total == 0 ? 0 : Math.min(100, offset * 100 / total));
+        return progress;
+    }
+
+    /**
+     * 重新执行失败的任务（从上次提交的位置继续）
+     */
+    public boolean resume(String jobId) {
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(jobKey(jobId)))) {
+            return false;
+        }
+        Object status = stringRedisTemplate.opsForHash().get(jobKey(jobId), "status");
+        if (STATUS_DONE.equals(status)) {
+            return true;
+        }
+        if (STATUS_FAILED.equals(status)) {
+            // 分群复制未完成的回到复制阶段
+            Object total = stringRedisTemplate.opsForHash().get(jobKey(jobId), "total");
+            stringRedisTemplate.opsForHash().put(jobKey(jobId), "status", total == null ? STATUS_PREPARING : STATUS_RUNNING);
+            stringRedisTemplate.opsForHash().delete(jobKey(jobId), "error");
+        }
+        stringRedisTemplate.opsForSet().add(ACTIVE_JOBS_KEY, jobId);
+        schedule(jobId);
+        return true;
+    }
+
+    /**
+     * 定期接管未完成的任务（节点宕机、重启后继续执行）
+     */
+    @Scheduled(fixedDelayString = "${coupon.issue.resume-interval-ms:30000}",
+            initialDelayString = "${coupon.issue.resume-initial-delay-ms:10000}")
+    public void resumeActiveJobs() {
+        try {
+            Set<String> jobIds = stringRedisTemplate.opsForSet().members(ACTIVE_JOBS_KEY);
+            if (jobIds == null) {
+                return;
+            }
+            for (String jobId : jobIds) {
+                schedule(jobId);
+            }
+        } catch (Exception e) {
+            log.error("恢复批量发券任务失败", e);
+        }
+    }
+
+    private void schedule(String jobId) {
+        if (localJobs.add(jobId)) {
+            executor.execute(() -> {
+                try {
+                    run(jobId);
+                } finally {
+                    localJobs.remove(jobId);
+                }
+            });
+        }
+    }
+
+    private void run(String jobId) {
+        RLock lock = redissonClient.getLock(LOCK_KEY_PREFIX + jobId);
+        if (!lock.tryLock()) {
+            // 其他节点正在执行
+            return;
+        }
+        String key = jobKey(jobId);
+        try {
+            Map<Object, Object> job = stringRedisTemplate.opsForHash().entries(key);
+            if (job.isEmpty()) {
+                // 任务已过期
+                stringRedisTemplate.opsForSet().remove(ACTIVE_JOBS_KEY, jobId);
+                return;
+            }
+            Object status = job.get("status");
+            if (STATUS_DONE.equals(status) || STATUS_FAILED.equals(status)) {
+                stringRedisTemplate.opsForSet().remove(ACTIVE_JOBS_KEY, jobId);
+                return;
+            }
+
+            Long couponId = Long.valueOf(job.get("couponId").toString());
+            long start = System.currentTimeMillis();
+            if (STATUS_PREPARING.equals(status)) {
+                long total = copySegment(jobId, job.get("segmentKey").toString());
+                stringRedisTemplate.opsForHash().put(key, "total", String.valueOf(total));
+                stringRedisTemplate.opsForHash().put(key, "status", STATUS_RUNNING);
+            }
+
+            long offset = parseLong(job.get("offset"));
+            while (!stopping && !Thread.currentThread().isInterrupted()) {
+                List<String> chunk = stringRedisTemplate.opsForList().range(usersKey(jobId), offset, offset + chunkSize - 1);
+                if (chunk == null || chunk.isEmpty()) {
+                    break;
+                }
+                ChunkResult result = issueChunk(couponId, chunk);
+                offset += result.processed;
+                stringRedisTemplate.opsForHash().increment(key, "issued", result.issued);
+                stringRedisTemplate.opsForHash().increment(key, "skipped", result.processed - result.issued);
+                stringRedisTemplate.opsForHash().put(key, "offset", String.valueOf(offset));
+                if (result.processed < chunk.size()) {
+                    // 库存耗尽，停在第一个未发放的用户，增加库存后可继续执行
+                    log.warn("批量发券任务库存不足: jobId={}, 优惠券ID={}, 已处理={}", jobId, couponId, offset);
+                    stringRedisTemplate.opsForHash().put(key, "status", STATUS_FAILED);
+                    stringRedisTemplate.opsForHash().put(key, "error", "优惠券库存不足");
+                    stringRedisTemplate.opsForSet().remove(ACTIVE_JOBS_KEY, jobId);
+                    return;
+                }
+            }
+            if (stopping || Thread.currentThread().isInterrupted()) {
+                // 停机中断，保留任务由其他节点继续
+                return;
+            }
+
+            stringRedisTemplate.opsForHash().put(key, "status", STATUS_DONE);
+            stringRedisTemplate.opsForHash().put(key, "finishedAt", String.valueOf(System.currentTimeMillis()));
+            stringRedisTemplate.opsForSet().remove(ACTIVE_JOBS_KEY, jobId);
+            stringRedisTemplate.delete(usersKey(jobId));
+            log.info("批量发券任务完成: jobId={}, 优惠券ID={}, 处理={}, 耗时={}ms",
+                    jobId, couponId, offset, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            if (stopping || Thread.currentThread().isInterrupted() || isInterruption(e)) {
+                // 停机时被中断的Redis/数据库调用，进度停在上次提交的位置，保留任务由其他节点继续
+                log.warn("批量发券任务因停机中断: jobId={}", jobId);
+                return;
+            }
+            log.error("批量发券任务失败: jobId={}", jobId, e);
+            stringRedisTemplate.opsForHash().put(key, "status", STATUS_FAILED);
+            stringRedisTemplate.opsForHash().put(key, "error", String.valueOf(e.getMessage()));
+            stringRedisTemplate.opsForSet().remove(ACTIVE_JOBS_KEY, jobId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 发放一块用户
+     * 库存不足时只发放预占到的用户，processed 停在第一个未发放的用户
+     */
+    private ChunkResult issueChunk(Long couponId, List<String> chunk) {
+        // 块内去重，记录每个用户在块内首次出现的位置（成员可能写成 "007"、"+7"，不能按原字符串查找）
+        Map<Long, Integer> firstIndexes = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            firstIndexes.putIfAbsent(Long.valueOf(chunk.get(i)), i);
+        }
+        List<Long> userIds = new ArrayList<>(firstIndexes.keySet());
+
+        String trackerKey = "coupon:user:" + couponId;
+        List<Boolean> claimed = participantTracker.areMembers(stringRedisTemplate, trackerKey, userIds);
+        List<Long> candidates = new ArrayList<>(userIds.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            if (!claimed.get(i)) {
+                candidates.add(userIds.get(i));
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new ChunkResult(chunk.size(), 0);
+        }
+
+        // 按人数预占库存，预占不足时只发放前面的用户
+        int reserved = reserveStock(couponId, candidates.size());
+        int processed = chunk.size();
+        if (reserved < candidates.size()) {
+            processed = firstIndexes.get(candidates.get(reserved));
+            candidates = new ArrayList<>(candidates.subList(0, reserved));
+        }
+        if (candidates.isEmpty()) {
+            return new ChunkResult(processed, 0);
+        }
+
+        List<Long> granted = candidates;
+        Integer inserted = transactionTemplate.execute(status -> {
+            int rows = userCouponMapper.batchInsertIfAbsent(couponId, granted, STATUS_UNUSED);
+            if (rows > 0) {
+                couponMapper.incrementUsedCount(couponId, rows);
+            }
+            return rows;
+        });
+        int rows = inserted == null ? 0 : inserted;
+
+        // 已有用户优惠券的用户没有插入，归还其预占的库存
+        if (rows < reserved) {
+            stringRedisTemplate.execute(stockReturnScript,
+                    Collections.singletonList(stockKey(couponId)), String.valueOf(reserved - rows));
+        }
+        // 事务提交后再写领取记录，中断重做时由唯一键跳过已发放的用户
+        participantTracker.addAll(stringRedisTemplate, trackerKey, granted);
+        return new ChunkResult(processed, rows);
+    }
+
+    /**
+     * 原子预占领券库存，库存键不存在时按数据库初始化后重试一次
+     * @return 实际预占数量
+     */
+    private int reserveStock(Long couponId, int requested) {
+        List<String> keys = Collections.singletonList(stockKey(couponId));
+        Long reserved = stringRedisTemplate.execute(stockReserveScript, keys, String.valueOf(requested));
+        if (reserved != null && reserved < 0) {
+            // 剩余库存 = 总数 - 已落库的用户优惠券数，SETNX保证与领券的并发初始化只有一个生效
+            Coupon coupon = couponMapper.selectById(couponId);
+            int total = coupon != null && coupon.getTotalCount() != null ? coupon.getTotalCount() : 0;
+            int issued = userCouponMapper.countByCouponIds(Collections.singletonList(couponId)).stream()
+                    .mapToInt(CouponCount::getCount)
+                    .sum();
+            stringRedisTemplate.opsForValue().setIfAbsent(stockKey(couponId), String.valueOf(Math.max(0, total - issued)));
+            reserved = stringRedisTemplate.execute(stockReserveScript, keys, String.valueOf(requested));
+        }
+        return reserved == null || reserved < 0 ? 0 : reserved.intValue();
+    }
+
+    /**
+     * 复制分群成员到任务用户列表（SSCAN分批，重复执行时先清空）
+     */
+    private long copySegment(String jobId, String segmentKey) {
+        String usersKey = usersKey(jobId);
+        stringRedisTemplate.delete(usersKey);
+        ScanOptions options = ScanOptions.scanOptions().count(chunkSize).build();
+        List<Long> buffer = new ArrayList<>(chunkSize);
+        long total = 0;
+        try (Cursor<String> cursor = stringRedisTemplate.opsForSet().scan(segmentKey, options)) {
+            while (cursor.hasNext()) {
+                buffer.add(Long.valueOf(cursor.next()));
+                if (buffer.size() >= chunkSize) {
+                    pushUsers(jobId, buffer);
+                    total += buffer.size();
+                    buffer.clear();
+                }
+            }
+        }
+        if (!buffer.isEmpty()) {
+            pushUsers(jobId, buffer);
+            total += buffer.size();
+        }
+        return total;
+    }
+
+    private void pushUsers(String jobId, List<Long> userIds) {
+        String usersKey = usersKey(jobId);
+        for (int from = 0; from < userIds.size(); from += chunkSize) {
+            List<String> slice = new ArrayList<>(chunkSize);
+            for (Long userId : userIds.subList(from, Math.min(from + chunkSize, userIds.size()))) {
+                slice.add(userId.toString());
+            }
+            stringRedisTemplate.opsForList().rightPushAll(usersKey, slice);
+        }
+        stringRedisTemplate.expire(usersKey, Duration.ofHours(jobTtlHours));
+    }
+
+    private static String stockKey(Long couponId) {
+        return "coupon:stock:" + couponId;
+    }
+
+    private static String jobKey(String jobId) {
+        return JOB_KEY_PREFIX + jobId;
+    }
+
+    private static String usersKey(String jobId) {
+        return JOB_KEY_PREFIX + jobId + ":users";
+    }
+
+    private static long parseLong(Object value) {
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    /**
+     * 停机时 shutdownNow 中断的调用会以各种异常抛出，按原因链判断
+     */
+    private static boolean isInterruption(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一块的处理结果：processed 为推进的用户数（库存不足时小于块大小），issued 为实际发放数量
+     */
+    private static class ChunkResult {
+        private final int processed;
+        private final int issued;
+
+        private ChunkResult(int processed, int issued) {
+            this.processed = processed;
+            this.issued = issued;
+        }
+    }
+}
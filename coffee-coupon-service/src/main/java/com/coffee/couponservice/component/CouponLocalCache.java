@@ -0,0 +1,283 @@
+package com.coffee.couponservice.component;
+
+import com.alibaba.fastjson.JSON;
+import com.coffee.couponservice.entity.Coupon;
+import com.coffee.couponservice.mapper.CouponMapper;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 优惠券元数据二级缓存
+ *
+ * 一级为节点内Caffeine缓存（W-TinyLFU淘汰、容量有上限），二级为Redis coupon:meta:{couponId}，最后回源数据库：
+ * 1. 不存在的优惠券以空标记缓存（一级Optional.empty，二级短TTL空值），防止穿透
+ * 2. 批量获取时一级未命中的通过一次MGET、再一次批量查询回源
+ * 优惠券增删改后删除二级缓存，并通过 coupon:cache:invalidate 频道广播，各节点清理一级缓存；
+ * 删除前已读到旧数据的并发回源可能在删除后把旧值写回，因此延迟一段时间后再删除、广播一次（延迟双删）。
+ * 广播丢失时由一级缓存过期时间兜底。
+ * 已使用数量由异步回写累加，不触发失效，缓存中的 usedCount 可能滞后，需要精确值时直接查询数据库。
+ */
+@Slf4j
+@Component
+public class CouponLocalCache implements MessageListener {
+
+    /**
+     * 失效广播频道，消息体为优惠券ID
+     */
+    public static final String CHANNEL = "coupon:cache:invalidate";
+
+    private static final String META_KEY_PREFIX = "coupon:meta:";
+
+    /**
+     * 二级缓存中的空值标记
+     */
+    private static final String NULL_VALUE = "";
+
+    @Autowired
+    private CouponMapper couponMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Value("${coupon.cache.local.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${coupon.cache.local.ttl-ms:60000}")
+    private long ttlMillis;
+
+    @Value("${coupon.cache.redis.ttl-seconds:3600}")
+    private long redisTtlSeconds;
+
+    @Value("${coupon.cache.redis.null-ttl-seconds:60}")
+    private long redisNullTtlSeconds;
+
+    /**
+     * 第二次删除的延迟，需大于一次回源（查库 + 写回二级缓存）的耗时
+     */
+    @Value("${coupon.cache.invalidate-delay-ms:1000}")
+    private long invalidateDelayMillis;
+
+    private LoadingCache<Long, Optional<Coupon>> coupons;
+
+    // 二级缓存和数据库指标（一级缓存指标由Caffeine统计）
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+    private final LongAdder dbLoads = new LongAdder();
+    private final LongAdder dbLoadNanos = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        coupons = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build(new CacheLoader<Long, Optional<Coupon>>() {
+                    @Override
+                    public Optional<Coupon> load(Long couponId) {
+                        return Optional.ofNullable(loadCoupon(couponId));
+                    }
+
+                    @Override
+                    public Map<Long, Optional<Coupon>> loadAll(Set<? extends Long> couponIds) {
+                        return loadCoupons(couponIds);
+                    }
+                });
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 获取优惠券，不存在时返回null
+     */
+    public Coupon get(Long couponId) {
+        return coupons.get(couponId).orElse(null);
+    }
+
+    /**
+     * 批量获取优惠券
+     * @return 优惠券ID -> 优惠券，不存在的优惠券不在结果中
+     */
+    public Map<Long, Coupon> getAll(Collection<Long> couponIds) {
+        Map<Long, Coupon> result = new HashMap<>();
+        coupons.getAll(couponIds).forEach((couponId, coupon) ->
+                coupon.ifPresent(value -> result.put(couponId, value)));
+        return result;
+    }
+
+    /**
+     * 优惠券变更后调用：删除二级缓存并广播，各节点（包括本节点）收到后清理一级缓存，
+     * 延迟后再执行一次，清除并发回源写回的旧值
+     */
+    public void invalidate(Long couponId) {
+        deleteAndBroadcast(couponId);
+        try {
+            taskScheduler.schedule(() -> deleteAndBroadcast(couponId),
+                    Instant.now().plusMillis(invalidateDelayMillis));
+        } catch (Exception e) {
+            // 调度失败时旧值最多保留到二级缓存过期
+            log.warn("延迟删除优惠券缓存调度失败: 优惠券ID={}", couponId, e);
+        }
+    }
+
+    private void deleteAndBroadcast(Long couponId) {
+        try {
+            stringRedisTemplate.delete(META_KEY_PREFIX + couponId);
+        } catch (Exception e) {
+            log.warn("删除优惠券二级缓存失败: 优惠券ID={}", couponId, e);
+        }
+        evictLocal(couponId);
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, couponId.toString());
+        } catch (Exception e) {
+            // 广播失败时其他节点等待一级缓存过期
+            log.warn("广播优惠券缓存失效失败: 优惠券ID={}", couponId, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            evictLocal(Long.valueOf(body));
+        } catch (NumberFormatException e) {
+            log.warn("无法识别的优惠券缓存失效消息: {}", body);
+        }
+    }
+
+    private void evictLocal(Long couponId) {
+        coupons.invalidate(couponId);
+        invalidations.increment();
+    }
+
+    private Coupon loadCoupon(Long couponId) {
+        String key = META_KEY_PREFIX + couponId;
+        String cached = stringRedisTemplate.opsForValue().get(key);
+        if (cached != null) {
+            redisHits.increment();
+            return NULL_VALUE.equals(cached) ? null : JSON.parseObject(cached, Coupon.class);
+        }
+        redisMisses.increment();
+
+        long start = System.nanoTime();
+        Coupon coupon = couponMapper.selectById(couponId);
+        recordDbLoad(start);
+        writeBack(key, coupon);
+        return coupon;
+    }
+
+    private Map<Long, Optional<Coupon>> loadCoupons(Set<? extends Long> couponIds) {
+        List<Long> ids = new ArrayList<>(couponIds);
+        List<String> keys = new ArrayList<>(ids.size());
+        for (Long couponId : ids) {
+            keys.add(META_KEY_PREFIX + couponId);
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+
+        Map<Long, Optional<Coupon>> result = new LinkedHashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String cached = values != null ? values.get(i) : null;
+            if (cached == null) {
+                misses.add(ids.get(i));
+            } else {
+                result.put(ids.get(i), NULL_VALUE.equals(cached)
+                        ? Optional.empty() : Optional.of(JSON.parseObject(cached, Coupon.class)));
+            }
+        }
+        redisHits.add(ids.size() - misses.size());
+        redisMisses.add(misses.size());
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        long start = System.nanoTime();
+        Map<Long, Coupon> loaded = new HashMap<>();
+        for (Coupon coupon : couponMapper.selectByIds(misses)) {
+            loaded.put(coupon.getId(), coupon);
+        }
+        recordDbLoad(start);
+        for (Long couponId : misses) {
+            Coupon coupon = loaded.get(couponId);
+            writeBack(META_KEY_PREFIX + couponId, coupon);
+            result.put(couponId, Optional.ofNullable(coupon));
+        }
+        return result;
+    }
+
+    private void writeBack(String key, Coupon coupon) {
+        try {
+            if (coupon == null) {
+                stringRedisTemplate.opsForValue().set(key, NULL_VALUE, Duration.ofSeconds(redisNullTtlSeconds));
+            } else {
+                stringRedisTemplate.opsForValue().set(key, JSON.toJSONString(coupon), Duration.ofSeconds(redisTtlSeconds));
+            }
+        } catch (Exception e) {
+            // 二级缓存写入失败不影响本次读取
+            log.warn("写入优惠券二级缓存失败: key={}", key, e);
+        }
+    }
+
+    private void recordDbLoad(long start) {
+        dbLoads.increment();
+        dbLoadNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * 缓存指标：一级缓存命中率、加载耗时、淘汰数，二级缓存命中数，数据库回源次数和平均耗时
+     */
+    public Map<String, Object> metrics() {
+        CacheStats stats = coupons.stats();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("localSize", coupons.estimatedSize());
+        metrics.put("localHits", stats.hitCount());
+        metrics.put("localMisses", stats.missCount());
+        metrics.put("localHitRate", stats.hitRate());
+        metrics.put("localEvictions", stats.evictionCount());
+        metrics.put("localAverageLoadMillis", stats.averageLoadPenalty() / 1_000_000.0);
+
+        long hits = redisHits.sum();
+        long misses = redisMisses.sum();
+        metrics.put("redisHits", hits);
+        metrics.put("redisMisses", misses);
+        metrics.put("redisHitRate", hits + misses == 0 ? 1.0 : (double) hits / (hits + misses));
+
+        long loads = dbLoads.sum();
+        metrics.put("dbLoads", loads);
+        metrics.put("dbAverageLoadMillis", loads == 0 ? 0.0 : dbLoadNanos.sum() / 1_000_000.0 / loads);
+        metrics.put("invalidations", invalidations.sum());
+        return metrics;
+    }
+}
@@ -0,0 +1,282 @@
+package com.coffee.couponservice.component;
+
+import com.coffee.couponservice.dto.CouponCount;
+import com.coffee.couponservice.entity.Coupon;
+import com.coffee.couponservice.mapper.CouponMapper;
+import com.coffee.couponservice.mapper.UserCouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Redis / 数据库库存对账
+ *
+ * 定时用SCAN（不使用KEYS）分批扫描库存键，每批一次管道读取Redis、一次聚合查询读取数据库：
+ * 1. 领券库存 coupon:stock:{couponId}：以数据库为准，期望值 = total_count - 已发放用户优惠券数。
+ *    领券请求先扣Redis再写库，单次观察到的偏差可能只是在途请求，连续两轮偏差相同才修复；
+ *    修复使用 INCRBY 偏差量而不是覆盖，不会吞掉并发领取的扣减。
+ *    领券事件流有积压（落库停滞或未ACK）时，偏差包含已扣Redis未落库的领取且可能连续两轮不变，只统计不修复。
+ *    没有过期时间的键按优惠券结束时间补上过期时间，优惠券已删除的键直接清理。
+ * 2. 秒杀库存 seckill:stock:{couponId}：秒杀期间以Redis为准，数据库由异步回写追平，
+ *    只统计偏差（total_count - used_count - Redis库存），不修复。
+ * 集群内通过分布式锁保证同一时间只有一个节点对账，请求链路不受影响。
+ */
+@Slf4j
+@Component
+public class CouponStockReconciler {
+
+    private static final String CLAIM_STOCK_PREFIX = "coupon:stock:";
+
+    private static final String SECKILL_STOCK_PREFIX = "seckill:stock:";
+
+    private static final String LOCK_KEY = "coupon:reconcile:lock";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private CouponMapper couponMapper;
+
+    @Autowired
+    private UserCouponMapper userCouponMapper;
+
+    @Autowired
+    private CouponClaimWriter couponClaimWriter;
+
+    @Value("${coupon.stock.reconcile.batch-size:200}")
+    private int batchSize;
+
+    @Value("${coupon.stock.reconcile.batch-pause-ms:20}")
+    private long batchPauseMillis;
+
+    /**
+     * 上一轮观察到的领券库存偏差，连续两轮相同才修复
+     */
+    private final Map<Long, Long> observedDrifts = new ConcurrentHashMap<>();
+
+    // 对账指标
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong lastScannedKeys = new AtomicLong();
+    private final AtomicLong lastClaimDriftKeys = new AtomicLong();
+    private final AtomicLong lastClaimDriftTotal = new AtomicLong();
+    private final AtomicLong lastSeckillDriftKeys = new AtomicLong();
+    private final AtomicLong lastSeckillDriftTotal = new AtomicLong();
+    private final AtomicLong repairedKeys = new AtomicLong();
+    private final AtomicLong lastRunMillis = new AtomicLong();
+    private final AtomicLong lastRunAt = new AtomicLong();
+
+    @Scheduled(fixedDelayString = "${coupon.stock.reconcile.interval-ms:60000}",
+            initialDelayString = "${coupon.stock.reconcile.initial-delay-ms:30000}")
+    public void reconcile() {
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Stats claim = new Stats();
+            Stats seckill = new Stats();
+            scan(CLAIM_STOCK_PREFIX, batch -> reconcileClaimStock(batch, claim));
+            scan(SECKILL_STOCK_PREFIX, batch -> reconcileSeckillStock(batch, seckill));
+
+            runs.incrementAndGet();
+            lastScannedKeys.set(claim.scanned + seckill.scanned);
+            lastClaimDriftKeys.set(claim.driftKeys);
+            lastClaimDriftTotal.set(claim.driftTotal);
+            lastSeckillDriftKeys.set(seckill.driftKeys);
+            lastSeckillDriftTotal.set(seckill.driftTotal);
+            lastRunMillis.set(System.currentTimeMillis() - start);
+            lastRunAt.set(start);
+            if (claim.driftKeys > 0 || seckill.driftKeys > 0) {
+                log.warn("库存对账发现偏差: 领券库存偏差键={}, 偏差合计={}, 秒杀库存偏差键={}, 偏差合计={}",
+                        claim.driftKeys, claim.driftTotal, seckill.driftKeys, seckill.driftTotal);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("库存对账失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * SCAN扫描指定前缀、后缀为数字优惠券ID的键，每攒够一批处理一次
+     */
+    private void scan(String prefix, BatchHandler handler) throws InterruptedException {
+        ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(batchSize).build();
+        Map<Long, String> batch = new LinkedHashMap<>();
+        try (Cursor<byte[]> cursor = stringRedisTemplate.executeWithStickyConnection(
+                (RedisCallback<Cursor<byte[]>>) connection -> connection.scan(options))) {
+            while (cursor != null && cursor.hasNext()) {
+                String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                Long couponId = parseCouponId(key, prefix);
+                if (couponId == null) {
+                    continue;
+                }
+                batch.put(couponId, key);
+                if (batch.size() >= batchSize) {
+                    handler.handle(batch);
+                    batch.clear();
+                    // 批次之间让出Redis和数据库
+                    Thread.sleep(batchPauseMillis);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            handler.handle(batch);
+        }
+    }
+
+    /**
+     * 分段库存、活动库存等非数字后缀的键不参与对账
+     */
+    private static Long parseCouponId(String key, String prefix) {
+        String suffix = key.substring(prefix.length());
+        if (suffix.isEmpty() || !suffix.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        return Long.valueOf(suffix);
+    }
+
+    private void reconcileClaimStock(Map<Long, String> batch, Stats stats) {
+        stats.scanned += batch.size();
+        List<Long> couponIds = new ArrayList<>(batch.keySet());
+        List<String> keys = new ArrayList<>(batch.values());
+
+        // 一次管道读取库存和剩余过期时间
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                connection.get(rawKey);
+                connection.ttl(rawKey);
+            }
+            return null;
+        });
+        Map<Long, Coupon> coupons = couponMapper.selectByIds(couponIds).stream()
+                .collect(Collectors.toMap(Coupon::getId, Function.identity()));
+        Map<Long, Integer> issued = userCouponMapper.countByCouponIds(couponIds).stream()
+                .collect(Collectors.toMap(CouponCount::getCouponId, CouponCount::getCount));
+        // 读取库存和发放数之后再检查积压，读取时已记录事件但尚未落库的领取会体现为积压
+        boolean claimBacklog = couponClaimWriter.hasBacklog();
+
+        for (int i = 0; i < couponIds.size(); i++) {
+            Long couponId = couponIds.get(i);
+            String key = keys.get(i);
+            Object value = values.get(i * 2);
+            Long ttl = (Long) values.get(i * 2 + 1);
+            Coupon coupon = coupons.get(couponId);
+            if (coupon == null) {
+                stringRedisTemplate.delete(key);
+                observedDrifts.remove(couponId);
+                log.info("优惠券 {} 已不存在，清理领券库存键", couponId);
+                continue;
+            }
+            if (value == null) {
+                continue;
+            }
+
+            int total = coupon.getTotalCount() != null ? coupon.getTotalCount() : 0;
+            long expected = Math.max(0, total - issued.getOrDefault(couponId, 0));
+            long drift = expected - Long.parseLong(value.toString());
+            if (drift != 0) {
+                stats.driftKeys++;
+                stats.driftTotal += Math.abs(drift);
+            }
+            if (drift == 0 || claimBacklog) {
+                // 有积压时不累计观察，积压清空后重新观察两轮
+                observedDrifts.remove(couponId);
+            } else {
+                Long previous = observedDrifts.put(couponId, drift);
+                if (previous != null && previous == drift) {
+                    stringRedisTemplate.opsForValue().increment(key, drift);
+                    observedDrifts.remove(couponId);
+                    repairedKeys.incrementAndGet();
+                    log.warn("修复领券库存偏差: 优惠券ID={}, 期望={}, 偏差={}", couponId, expected, drift);
+                }
+            }
+
+            if (ttl != null && ttl == -1 && coupon.getEndTime() != null) {
+                long expireAt = coupon.getEndTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                        + TimeUnit.DAYS.toMillis(1);
+                stringRedisTemplate.expireAt(key, new Date(expireAt));
+            }
+        }
+    }
+
+    private void reconcileSeckillStock(Map<Long, String> batch, Stats stats) {
+        stats.scanned += batch.size();
+        List<Long> couponIds = new ArrayList<>(batch.keySet());
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(new ArrayList<>(batch.values()));
+        Map<Long, Coupon> coupons = couponMapper.selectByIds(couponIds).stream()
+                .collect(Collectors.toMap(Coupon::getId, Function.identity()));
+
+        for (int i = 0; i < couponIds.size(); i++) {
+            Coupon coupon = coupons.get(couponIds.get(i));
+            String value = values != null ? values.get(i) : null;
+            if (coupon == null || value == null) {
+                continue;
+            }
+            int total = coupon.getTotalCount() != null ? coupon.getTotalCount() : 0;
+            int used = coupon.getUsedCount() != null ? coupon.getUsedCount() : 0;
+            long drift = total - used - Long.parseLong(value);
+            if (drift != 0) {
+                stats.driftKeys++;
+                stats.driftTotal += Math.abs(drift);
+            }
+        }
+    }
+
+    /**
+     * 对账指标：扫描键数、偏差键数和偏差合计、累计修复键数、耗时
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("runs", runs.get());
+        metrics.put("lastRunAt", lastRunAt.get());
+        metrics.put("lastRunMillis", lastRunMillis.get());
+        metrics.put("lastScannedKeys", lastScannedKeys.get());
+        metrics.put("claimDriftKeys", lastClaimDriftKeys.get());
+        metrics.put("claimDriftTotal", lastClaimDriftTotal.get());
+        metrics.put("seckillDriftKeys", lastSeckillDriftKeys.get());
+        metrics.put("seckillDriftTotal", lastSeckillDriftTotal.get());
+        metrics.put("repairedKeys", repairedKeys.get());
+        return metrics;
+    }
+
+    @FunctionalInterface
+    private interface BatchHandler {
+        void handle(Map<Long, String> batch) throws InterruptedException;
+    }
+
+    private static class Stats {
+        private long scanned;
+        private long driftKeys;
+        private long driftTotal;
+    }
+}
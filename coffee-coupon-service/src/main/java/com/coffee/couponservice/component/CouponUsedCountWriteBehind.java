@@ -0,0 +1,191 @@
+package com.coffee.couponservice.component;
+
+import com.coffee.couponservice.mapper.CouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 秒杀结果异步回写（write-behind）
+ * 
+ * 中奖事件由秒杀脚本在扣减库存的同一次调用内追加到Redis Stream，后台定时任务按消费组读取事件，
+ * 按优惠券合并增量后每个刷新周期只执行一次 used_count = used_count + ?。
+ * 事件ID与增量在同一事务内登记，写库成功后、ACK之前崩溃导致的重放会被跳过；
+ * 未ACK的事件留在消费者的pending列表中，本节点重启后重放，节点下线后由其他节点接管。
+ * 同一事件流同时作为订单消息的outbox，由 SeckillEventPublisher 以独立消费组读取。
+ */
+@Slf4j
+@Component
+public class CouponUsedCountWriteBehind {
+    
+    /**
+     * 秒杀中奖事件流
+     */
+    public static final String STREAM_KEY = "seckill:stream:win";
+    
+    private static final String GROUP = "coupon-used-count";
+    
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    
+    @Autowired
+    private CouponMapper couponMapper;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Autowired
+    private StreamConsumerSupport streamConsumerSupport;
+    
+    @Value("${coupon.seckill.write-behind.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${coupon.seckill.write-behind.event-retention-days:7}")
+    private int eventRetentionDays;
+    
+    private String consumerName;
+    
+    @PostConstruct
+    public void init() {
+        try {
+            // 主机名在重启后保持不变，重启的实例可以接管自己的pending事件
+            consumerName = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            consumerName = "coupon-service";
+        }
+        
+        try {
+            stringRedisTemplate.opsForStream().createGroup(STREAM_KEY, ReadOffset.from("0"), GROUP);
+            log.info("创建秒杀事件消费组: stream={}, group={}", STREAM_KEY, GROUP);
+        } catch (Exception e) {
+            // 消费组已存在（BUSYGROUP）
+            log.debug("秒杀事件消费组已存在: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 定时刷新：先接管其他节点的空闲事件并重放本消费者未ACK的事件，再处理新事件
+     */
+    @Scheduled(fixedDelayString = "${coupon.seckill.write-behind.flush-interval-ms:500}")
+    public void flush() {
+        try {
+            streamConsumerSupport.claimIdle(STREAM_KEY, GROUP, consumerName);
+            // 未ACK的事件（上次写库失败或进程崩溃前已读取）
+            flush(ReadOffset.from("0"));
+            // 新事件，积压较多时连续处理，直到不足一批
+            int read;
+            do {
+                read = flush(ReadOffset.lastConsumed());
+            } while (read >= batchSize);
+            // 三个消费组共享事件流，只裁掉全部消费组都已ACK的事件
+            streamConsumerSupport.trimAcknowledged(STREAM_KEY);
+        } catch (Exception e) {
+            log.error("秒杀结果回写失败", e);
+        }
+    }
+    
+    /**
+     * 每天清理过期的事件登记，此时对应事件早已ACK并从事件流裁剪
+     */
+    @Scheduled(cron = "${coupon.seckill.write-behind.event-purge-cron:0 30 4 * * ?}")
+    public void purgeAppliedEvents() {
+        LocalDateTime before = LocalDateTime.now().minusDays(eventRetentionDays);
+        int total = 0;
+        int deleted;
+        do {
+            deleted = couponMapper.deleteAppliedEventsBefore(before, 1000);
+            total += deleted;
+        } while (deleted >= 1000);
+        log.info("清理优惠券使用数量回写事件登记: 删除={}", total);
+    }
+    
+    /**
+     * 读取一批事件，按优惠券合并后写库并ACK
+     * @return 本批读取的事件数
+     */
+    private int flush(ReadOffset offset) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                Consumer.from(GROUP, consumerName),
+                StreamReadOptions.empty().count(batchSize),
+                StreamOffset.create(STREAM_KEY, offset));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        
+        // 按优惠券分组
+        Map<Long, List<MapRecord<String, Object, Object>>> recordsByCoupon = new HashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            Object couponId = record.getValue().get("couponId");
+            if (couponId == null) {
+                // 无法解析的事件直接ACK，避免反复重放
+                stringRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, record.getId());
+                continue;
+            }
+            recordsByCoupon.computeIfAbsent(Long.valueOf(couponId.toString()), k -> new ArrayList<>()).add(record);
+        }
+        
+        for (Map.Entry<Long, List<MapRecord<String, Object, Object>>> entry : recordsByCoupon.entrySet()) {
+            Long couponId = entry.getKey();
+            List<MapRecord<String, Object, Object>> couponRecords = entry.getValue();
+            try {
+                Integer delta = transactionTemplate.execute(status -> apply(couponId, couponRecords));
+                RecordId[] ids = couponRecords.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+                stringRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, ids);
+                log.info("回写优惠券使用数量: 优惠券ID={}, 事件={}, 增量={}", couponId, ids.length, delta);
+            } catch (Exception e) {
+                // 不ACK，下个周期从pending列表重放
+                log.error("回写优惠券使用数量失败: 优惠券ID={}, 事件={}", couponId, couponRecords.size(), e);
+            }
+        }
+        return records.size();
+    }
+    
+    /**
+     * 跳过已登记的事件，登记其余事件并累加使用数量（调用方开启事务）
+     * @return 本次累加的增量
+     */
+    private int apply(Long couponId, List<MapRecord<String, Object, Object>> couponRecords) {
+        List<String> eventIds = new ArrayList<>(couponRecords.size());
+        for (MapRecord<String, Object, Object> record : couponRecords) {
+            eventIds.add(record.getId().getValue());
+        }
+        Set<String> applied = new HashSet<>(couponMapper.selectAppliedEventIds(eventIds));
+        
+        List<String> pendingIds = new ArrayList<>();
+        int delta = 0;
+        for (MapRecord<String, Object, Object> record : couponRecords) {
+            if (applied.contains(record.getId().getValue())) {
+                continue;
+            }
+            Object quantity = record.getValue().get("quantity");
+            pendingIds.add(record.getId().getValue());
+            delta += quantity != null ? Integer.parseInt(quantity.toString()) : 1;
+        }
+        if (pendingIds.isEmpty()) {
+            return 0;
+        }
+        couponMapper.batchInsertAppliedEvents(couponId, pendingIds);
+        couponMapper.incrementUsedCount(couponId, delta);
+        return delta;
+    }
+}
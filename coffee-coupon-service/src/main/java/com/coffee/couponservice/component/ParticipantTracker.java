@@ -0,0 +1,127 @@
+package com.coffee.couponservice.component;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 参与用户记录方式（秒杀、领券去重）
+ * 
+ * SET：Redis集合，支持任意用户ID（默认）
+ * BITMAP：Redis位图，以数字用户ID为偏移量（SETBIT/GETBIT），用户ID需小于2^32。
+ *         位图大小由最大用户ID决定（最大ID/8 字节），与参与人数无关：
+ *         用户ID连续且较小时（如百万以内）每个键约百KB；ID稀疏或很大时单个键最多可达512MB，
+ *         此时应使用SET
+ * 
+ * 两种方式使用不同的键，切换时不会出现WRONGTYPE错误；但切换后读不到另一种方式的记录，
+ * 仍有旧记录时由 ParticipantTrackerGuard 拒绝启动
+ */
+public enum ParticipantTracker {
+    
+    SET,
+    
+    BITMAP;
+    
+    private static final long MAX_BITMAP_OFFSET = 0xFFFFFFFFL;
+    
+    /**
+     * 记录键
+     */
+    public String key(String baseKey) {
+        return this == BITMAP ? baseKey + ":bm" : baseKey;
+    }
+    
+    /**
+     * 传给Lua脚本的参数
+     */
+    public String scriptArg() {
+        return this == BITMAP ? "bitmap" : "set";
+    }
+    
+    /**
+     * 是否已参与
+     */
+    public boolean isMember(StringRedisTemplate redisTemplate, String baseKey, Long userId) {
+        if (this == BITMAP) {
+            return Boolean.TRUE.equals(redisTemplate.opsForValue().getBit(key(baseKey), offset(userId)));
+        }
+        return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(key(baseKey), userId.toString()));
+    }
+    
+    /**
+     * 记录参与
+     * @return false表示此前已参与
+     */
+    public boolean add(StringRedisTemplate redisTemplate, String baseKey, Long userId) {
+        if (this == BITMAP) {
+            return !Boolean.TRUE.equals(redisTemplate.opsForValue().setBit(key(baseKey), offset(userId), true));
+        }
+        Long added = redisTemplate.opsForSet().add(key(baseKey), userId.toString());
+        return added != null && added > 0;
+    }
+    
+    /**
+     * 批量判断是否已参与（一次管道）
+     * @return 与userIds一一对应
+     */
+    public List<Boolean> areMembers(StringRedisTemplate redisTemplate, String baseKey, List<Long> userIds) {
+        byte[] rawKey = key(baseKey).getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long userId : userIds) {
+                if (this == BITMAP) {
+                    connection.getBit(rawKey, offset(userId));
+                } else {
+                    connection.sIsMember(rawKey, userId.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return null;
+        });
+        List<Boolean> members = new ArrayList<>(results.size());
+        for (Object result : results) {
+            members.add(Boolean.TRUE.equals(result));
+        }
+        return members;
+    }
+    
+    /**
+     * 批量记录参与（集合一次SADD，位图一次管道）
+     */
+    public void addAll(StringRedisTemplate redisTemplate, String baseKey, List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        if (this == BITMAP) {
+            byte[] rawKey = key(baseKey).getBytes(StandardCharsets.UTF_8);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long userId : userIds) {
+                    connection.setBit(rawKey, offset(userId), true);
+                }
+                return null;
+            });
+        } else {
+            String[] members = userIds.stream().map(String::valueOf).toArray(String[]::new);
+            redisTemplate.opsForSet().add(key(baseKey), members);
+        }
+    }
+    
+    /**
+     * 撤销参与记录
+     */
+    public void remove(StringRedisTemplate redisTemplate, String baseKey, Long userId) {
+        if (this == BITMAP) {
+            redisTemplate.opsForValue().setBit(key(baseKey), offset(userId), false);
+        } else {
+            redisTemplate.opsForSet().remove(key(baseKey), userId.toString());
+        }
+    }
+    
+    private static long offset(Long userId) {
+        if (userId < 0 || userId > MAX_BITMAP_OFFSET) {
+            throw new IllegalArgumentException("位图记录方式不支持该用户ID: " + userId);
+        }
+        return userId;
+    }
+}
@@ -0,0 +1,82 @@
+package com.coffee.couponservice.component;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 参与用户记录方式切换检查
+ *
+ * SET和BITMAP使用不同的键，切换后新方式读不到旧方式的记录，已参与的用户可以再次秒杀/领券。
+ * 启动时对比Redis中记录的方式：不一致且仍存在旧方式的记录键时拒绝启动，
+ * 待旧记录过期或清理后再切换；没有旧记录时更新为当前方式。
+ */
+@Slf4j
+@Component
+public class ParticipantTrackerGuard {
+
+    private static final String SECKILL_USER_PREFIX = "seckill:user:";
+
+    private static final String CLAIM_USER_PREFIX = "coupon:user:";
+
+    private static final String MODE_KEY_SUFFIX = "tracker";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${coupon.seckill.participant-tracker:SET}")
+    private ParticipantTracker seckillTracker;
+
+    @Value("${coupon.claim.participant-tracker:SET}")
+    private ParticipantTracker claimTracker;
+
+    @PostConstruct
+    public void verify() {
+        verify(SECKILL_USER_PREFIX, seckillTracker);
+        verify(CLAIM_USER_PREFIX, claimTracker);
+    }
+
+    private void verify(String prefix, ParticipantTracker tracker) {
+        String modeKey = prefix + MODE_KEY_SUFFIX;
+        String recorded = stringRedisTemplate.opsForValue().get(modeKey);
+        if (tracker.name().equals(recorded)) {
+            return;
+        }
+
+        // 首次检查或方式已变更：确认不存在另一种方式的记录键
+        String otherKey = findOtherModeKey(prefix, tracker, modeKey);
+        if (otherKey != null) {
+            throw new IllegalStateException("参与用户记录方式不能切换为 " + tracker
+                    + "：仍存在其他方式的记录键 " + otherKey + "，请等待旧记录过期或清理后再切换");
+        }
+        stringRedisTemplate.opsForValue().set(modeKey, tracker.name());
+        log.info("参与用户记录方式: 前缀={}, 方式={}", prefix, tracker);
+    }
+
+    /**
+     * SCAN查找另一种方式的记录键：当前为BITMAP时找集合键，当前为SET时找位图键（:bm后缀）
+     */
+    private String findOtherModeKey(String prefix, ParticipantTracker tracker, String modeKey) {
+        String pattern = tracker == ParticipantTracker.BITMAP ? prefix + "*" : prefix + "*:bm";
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
+        try (Cursor<byte[]> cursor = stringRedisTemplate.executeWithStickyConnection(
+                (RedisCallback<Cursor<byte[]>>) connection -> connection.scan(options))) {
+            while (cursor != null && cursor.hasNext()) {
+                String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                if (key.equals(modeKey) || (tracker == ParticipantTracker.BITMAP && key.endsWith(":bm"))) {
+                    continue;
+                }
+                return key;
+            }
+        }
+        return null;
+    }
+}
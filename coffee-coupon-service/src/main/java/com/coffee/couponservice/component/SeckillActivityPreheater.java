@@ -0,0 +1,116 @@
+package com.coffee.couponservice.component;
+
+import com.coffee.couponservice.entity.SeckillActivity;
+import com.coffee.couponservice.mapper.SeckillActivityMapper;
+import com.coffee.couponservice.service.CouponSeckillService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 秒杀活动预热
+ *
+ * 定时扫描即将开始的秒杀活动，在开始时间之前：
+ * 1. 活动信息（时间窗口、每人限购）和库存写入Redis
+ *    （集群内只由一个节点执行，通过 seckill:preheat:{activityId} 标记保证）
+ * 2. 每个节点载入Lua脚本、按库存设置售罄标记
+ * 避免开抢第一秒缓存未命中打到数据库。
+ * 下线按数据库中已结束/已取消的活动驱动，不依赖本节点是否预热过（重启后的节点同样能下线）；
+ * 活动相关的键都带过期时间，所有节点都未能下线时也会在活动结束一天后自动清理。
+ */
+@Slf4j
+@Component
+public class SeckillActivityPreheater {
+
+    private static final String PREHEAT_KEY_PREFIX = "seckill:preheat:";
+
+    @Autowired
+    private SeckillActivityMapper seckillActivityMapper;
+
+    @Autowired
+    private CouponSeckillService couponSeckillService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${coupon.seckill.preheat.lead-seconds:60}")
+    private long leadSeconds;
+
+    /**
+     * 下线窗口：结束时间在此窗口内的活动参与下线扫描，与预热标记的保留时间一致
+     */
+    @Value("${coupon.seckill.preheat.teardown-window-seconds:3600}")
+    private long teardownWindowSeconds;
+
+    /**
+     * 本节点已预热的活动（只用于跳过重复预热）
+     */
+    private final Map<Long, SeckillActivity> preheated = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${coupon.seckill.preheat.scan-interval-ms:10000}")
+    public void scan() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            List<SeckillActivity> activities = seckillActivityMapper.selectUpcoming(now.plusSeconds(leadSeconds), now);
+            for (SeckillActivity activity : activities) {
+                if (!preheated.containsKey(activity.getId())) {
+                    preheat(activity, now);
+                }
+            }
+        } catch (Exception e) {
+            log.error("扫描秒杀活动失败", e);
+        }
+
+        try {
+            List<SeckillActivity> ended = seckillActivityMapper.selectEnded(now.minusSeconds(teardownWindowSeconds), now);
+            for (SeckillActivity activity : ended) {
+                teardown(activity);
+            }
+        } catch (Exception e) {
+            log.error("扫描已结束秒杀活动失败", e);
+        }
+    }
+
+    private void preheat(SeckillActivity activity, LocalDateTime now) {
+        Long couponId = activity.getCouponId();
+        try {
+            // 标记保留到活动结束后，重启或其他节点扫描到同一活动时不会覆盖已被扣减的库存
+            Duration ttl = Duration.between(now, activity.getEndTime()).plusHours(1);
+            Boolean first = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(PREHEAT_KEY_PREFIX + activity.getId(), couponId.toString(), ttl);
+            if (Boolean.TRUE.equals(first)) {
+                couponSeckillService.initSeckillActivity(activity);
+            }
+            couponSeckillService.warmUpSeckill(activity);
+            preheated.put(activity.getId(), activity);
+        } catch (Exception e) {
+            // 不记录为已预热，下个周期重试
+            log.error("秒杀活动 {} 预热失败: 优惠券ID={}", activity.getId(), couponId, e);
+        }
+    }
+
+    private void teardown(SeckillActivity activity) {
+        try {
+            // 预热标记仍在说明库存尚未下线。下线操作幂等，多个节点同时执行不影响结果；
+            // 完成后再删除标记，失败时标记保留，下个周期重试
+            String preheatKey = PREHEAT_KEY_PREFIX + activity.getId();
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(preheatKey))) {
+                couponSeckillService.clearSeckillActivity(activity);
+                stringRedisTemplate.delete(preheatKey);
+                log.info("秒杀活动 {} 已结束，库存下线: 优惠券ID={}", activity.getId(), activity.getCouponId());
+            }
+            preheated.remove(activity.getId());
+        } catch (Exception e) {
+            log.error("秒杀活动 {} 库存下线失败: 优惠券ID={}", activity.getId(), activity.getCouponId(), e);
+        }
+    }
+}
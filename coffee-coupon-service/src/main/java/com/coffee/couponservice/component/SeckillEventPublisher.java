@@ -0,0 +1,270 @@
+package com.coffee.couponservice.component;
+
+import com.coffee.couponservice.config.RabbitMQConfig;
+import com.coffee.couponservice.dto.SeckillResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 秒杀成功事件发布器（outbox）
+ *
+ * 中奖事件已由 CouponUsedCountWriteBehind 追加到Redis Stream，本组件以独立消费组读取同一个流，
+ * 请求线程不再直接访问MQ：
+ * 1. 后台线程按批读取事件，带关联ID（Stream记录ID）发送到订单交换机
+ * 2. 整批等待发布确认，确认成功的事件ACK；nack、超时、被退回的事件留在pending列表，退避后重放
+ * 3. 进程崩溃时已读取未确认的事件同样留在pending列表，重启后重放；节点不再启动时由其他节点接管，保证中奖事件不丢
+ * 重放可能导致重复投递，消息ID固定为Stream记录ID，订单服务据此去重
+ */
+@Slf4j
+@Component
+public class SeckillEventPublisher {
+
+    private static final String GROUP = "order-publisher";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private StreamConsumerSupport streamConsumerSupport;
+
+    @Value("${coupon.seckill.publisher.batch-size:200}")
+    private int batchSize;
+
+    @Value("${coupon.seckill.publisher.idle-interval-ms:50}")
+    private long idleIntervalMillis;
+
+    @Value("${coupon.seckill.publisher.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMillis;
+
+    @Value("${coupon.seckill.publisher.retry-interval-ms:3000}")
+    private long retryIntervalMillis;
+
+    private String consumerName;
+
+    private Thread publisherThread;
+
+    private volatile boolean running = true;
+
+    // 下次允许重放pending事件的时间，启动时立即重放
+    private long nextReplayAt;
+
+    // 发布指标
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong lastBatchConfirmMillis = new AtomicLong();
+    private final AtomicLong maxBatchConfirmMillis = new AtomicLong();
+    private final AtomicLong lastEventDelayMillis = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        try {
+            consumerName = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            consumerName = "coupon-service";
+        }
+
+        try {
+            stringRedisTemplate.opsForStream().createGroup(
+                    CouponUsedCountWriteBehind.STREAM_KEY, ReadOffset.from("0"), GROUP);
+            log.info("创建秒杀事件消费组: stream={}, group={}", CouponUsedCountWriteBehind.STREAM_KEY, GROUP);
+        } catch (Exception e) {
+            // 消费组已存在（BUSYGROUP）
+            log.debug("秒杀事件消费组已存在: {}", e.getMessage());
+        }
+
+        // 使用独立线程，等待确认时不占用共享的定时任务线程
+        publisherThread = new Thread(this::publishLoop, "seckill-event-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        publisherThread.interrupt();
+    }
+
+    /**
+     * 发布循环：先接管其他节点的空闲事件并重放未确认事件，再发布新事件，没有事件时短暂休眠
+     */
+    private void publishLoop() {
+        while (running) {
+            try {
+                int read = 0;
+                if (System.currentTimeMillis() >= nextReplayAt) {
+                    streamConsumerSupport.claimIdle(CouponUsedCountWriteBehind.STREAM_KEY, GROUP, consumerName);
+                    read += publishBatch(ReadOffset.from("0"));
+                }
+                read += publishBatch(ReadOffset.lastConsumed());
+                if (read == 0) {
+                    Thread.sleep(idleIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("发布秒杀成功事件失败", e);
+                nextReplayAt = System.currentTimeMillis() + retryIntervalMillis;
+                try {
+                    Thread.sleep(retryIntervalMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取一批事件，整批发送后等待确认，只ACK确认成功的事件
+     * @return 本批读取的事件数
+     */
+    private int publishBatch(ReadOffset offset) throws InterruptedException {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                Consumer.from(GROUP, consumerName),
+                StreamReadOptions.empty().count(batchSize),
+                StreamOffset.create(CouponUsedCountWriteBehind.STREAM_KEY, offset));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+
+        long start = System.currentTimeMillis();
+        Map<RecordId, CorrelationData> inFlight = new LinkedHashMap<>();
+        List<RecordId> done = new ArrayList<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            SeckillResult event = toEvent(record);
+            if (event == null) {
+                // 无法解析的事件直接ACK，避免反复重放
+                done.add(record.getId());
+                continue;
+            }
+            String messageId = record.getId().getValue();
+            CorrelationData correlationData = new CorrelationData(messageId);
+            rabbitTemplate.convertAndSend(RabbitMQConfig.ORDER_EXCHANGE, RabbitMQConfig.ORDER_CREATE_ROUTING_KEY,
+                    event, message -> {
+                        message.getMessageProperties().setMessageId(messageId);
+                        return message;
+                    }, correlationData);
+            inFlight.put(record.getId(), correlationData);
+        }
+        sent.add(inFlight.size());
+
+        // 整批等待确认，超时未确认的留待重放
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+        int nacked = 0;
+        for (Map.Entry<RecordId, CorrelationData> entry : inFlight.entrySet()) {
+            if (isConfirmed(entry.getValue(), deadline)) {
+                done.add(entry.getKey());
+            } else {
+                nacked++;
+            }
+        }
+
+        if (!done.isEmpty()) {
+            stringRedisTemplate.opsForStream().acknowledge(
+                    CouponUsedCountWriteBehind.STREAM_KEY, GROUP, done.toArray(new RecordId[0]));
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        confirmed.add(inFlight.size() - nacked);
+        failed.add(nacked);
+        lastBatchConfirmMillis.set(elapsed);
+        maxBatchConfirmMillis.accumulateAndGet(elapsed, Math::max);
+        lastEventDelayMillis.set(start - eventTime(records.get(0)));
+
+        if (nacked > 0) {
+            nextReplayAt = System.currentTimeMillis() + retryIntervalMillis;
+            log.warn("秒杀成功事件未被确认，稍后重放: 未确认={}, 批大小={}", nacked, records.size());
+        }
+        return records.size();
+    }
+
+    private boolean isConfirmed(CorrelationData correlationData, long deadline) throws InterruptedException {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            CorrelationData.Confirm confirm = correlationData.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+            if (!confirm.isAck()) {
+                log.warn("秒杀成功事件被拒绝: id={}, 原因={}", correlationData.getId(), confirm.getReason());
+                return false;
+            }
+            // 路由不到队列时broker同样会ack，需要检查是否被退回
+            return correlationData.getReturned() == null;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("等待秒杀成功事件确认超时: id={}", correlationData.getId());
+            return false;
+        }
+    }
+
+    private SeckillResult toEvent(MapRecord<String, Object, Object> record) {
+        Object couponId = record.getValue().get("couponId");
+        Object userId = record.getValue().get("userId");
+        if (couponId == null || userId == null) {
+            return null;
+        }
+        SeckillResult event = new SeckillResult();
+        event.setSuccess(true);
+        event.setCouponId(Long.valueOf(couponId.toString()));
+        event.setUserId(Long.valueOf(userId.toString()));
+        Object activityId = record.getValue().get("activityId");
+        if (activityId != null) {
+            event.setActivityId(Long.valueOf(activityId.toString()));
+        }
+        Object quantity = record.getValue().get("quantity");
+        event.setQuantity(quantity != null ? Integer.valueOf(quantity.toString()) : 1);
+        event.setMessage("秒杀成功");
+        return event;
+    }
+
+    private long eventTime(MapRecord<String, Object, Object> record) {
+        // Stream记录ID的前半部分即写入时间（毫秒）
+        return record.getId().getTimestamp();
+    }
+
+    /**
+     * 发布指标：发送/确认/失败数量、批次确认耗时、事件发布延迟、积压数量
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("sent", sent.sum());
+        metrics.put("confirmed", confirmed.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("lastBatchConfirmMillis", lastBatchConfirmMillis.get());
+        metrics.put("maxBatchConfirmMillis", maxBatchConfirmMillis.get());
+        metrics.put("lastEventDelayMillis", lastEventDelayMillis.get());
+
+        PendingMessagesSummary pending = stringRedisTemplate.opsForStream()
+                .pending(CouponUsedCountWriteBehind.STREAM_KEY, GROUP);
+        metrics.put("pending", pending == null ? 0 : pending.getTotalPendingMessages());
+        metrics.put("streamLength", stringRedisTemplate.opsForStream().size(CouponUsedCountWriteBehind.STREAM_KEY));
+        return metrics;
+    }
+}
@@ -0,0 +1,386 @@
+package com.coffee.couponservice.component;
+
+import com.alibaba.fastjson.JSON;
+import com.coffee.common.result.Result;
+import com.coffee.couponservice.dto.SeckillRequest;
+import com.coffee.couponservice.dto.SeckillResult;
+import com.coffee.couponservice.service.CouponSeckillService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 秒杀入口队列
+ * 
+ * 1. 准入控制：已售罄直接拒绝，队列满直接返回系统繁忙，不占用Tomcat线程等待
+ * 2. 请求进入有界内存队列，少量工作线程在微批窗口（默认2ms）内批量取出，
+ *    同一优惠券的请求合并为一次Lua脚本调用
+ * 3. 立即返回ticket，客户端通过 /coupon/seckill/result/{ticket} 轮询结果
+ * 4. 停机时队列中未处理的请求写回失败结果；ticket带提交时间，超时仍无结果的按不存在处理
+ * 5. 批量脚本调用异常时脚本可能已部分执行（已扣库存、已写中奖事件），不写失败结果：
+ *    请求延迟后重新入队，由请求令牌保证重试幂等；重试仍无法确认的写回“结果确认中”
+ */
+@Slf4j
+@Component
+public class SeckillIngressQueue {
+    
+    private static final String RESULT_KEY_PREFIX = "seckill:result:";
+    
+    private static final String UNKNOWN_MESSAGE = "秒杀结果确认中，请稍后查询";
+    
+    @Autowired
+    private CouponSeckillService couponSeckillService;
+    
+    @Autowired
+    private SeckillSoldOutRegistry soldOutRegistry;
+    
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    
+    @Autowired
+    private TaskScheduler taskScheduler;
+    
+    @Value("${coupon.seckill.queue.capacity:10000}")
+    private int capacity;
+    
+    @Value("${coupon.seckill.queue.workers:2}")
+    private int workers;
+    
+    @Value("${coupon.seckill.queue.batch-size:100}")
+    private int batchSize;
+    
+    @Value("${coupon.seckill.queue.batch-window-ms:2}")
+    private long batchWindowMillis;
+    
+    @Value("${coupon.seckill.queue.result-ttl-seconds:600}")
+    private long resultTtlSeconds;
+    
+    @Value("${coupon.seckill.queue.pending-timeout-ms:30000}")
+    private long pendingTimeoutMillis;
+    
+    @Value("${coupon.seckill.queue.shutdown-wait-ms:3000}")
+    private long shutdownWaitMillis;
+    
+    @Value("${coupon.seckill.queue.retry-attempts:3}")
+    private int retryAttempts;
+    
+    @Value("${coupon.seckill.queue.retry-backoff-ms:500}")
+    private long retryBackoffMillis;
+    
+    private BlockingQueue<Task> queue;
+    
+    private final List<Thread> workerThreads = new ArrayList<>();
+    
+    private volatile boolean running = true;
+    
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::drainLoop, "seckill-worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workerThreads.add(thread);
+        }
+        log.info("秒杀入口队列已启动: 容量={}, 工作线程={}, 批大小={}", capacity, workers, batchSize);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workerThreads.forEach(Thread::interrupt);
+        for (Thread thread : workerThreads) {
+            try {
+                thread.join(shutdownWaitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        
+        // 队列中尚未处理的请求明确写回失败，客户端不会一直轮询到“排队中”
+        List<Task> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            failAll(remaining);
+            log.warn("停机时秒杀入口队列仍有未处理请求，已写回失败结果: 数量={}", remaining.size());
+        }
+    }
+    
+    /**
+     * 提交秒杀请求，返回ticket
+     */
+    public Result<String> submit(SeckillRequest request) {
+        if (soldOutRegistry.isSoldOut(request.getCouponId(), request.getActivityId())) {
+            return Result.error("秒杀失败，库存不足");
+        }
+        
+        // ticket前缀为提交时间，查询时据此区分排队中和已过期
+        String ticket = Long.toString(System.currentTimeMillis(), 36) + "-" + UUID.randomUUID().toString().replace("-", "");
+        // ticket同时作为请求令牌，保证重试时的幂等
+        if (!StringUtils.hasText(request.getRequestToken())) {
+            request.setRequestToken(ticket);
+        }
+        
+        if (!queue.offer(new Task(ticket, request))) {
+            log.warn("秒杀入口队列已满，拒绝用户 {} 的请求", request.getUserId());
+            return Result.error("系统繁忙，请稍后重试");
+        }
+        return Result.success("排队中", ticket);
+    }
+    
+    /**
+     * 查询秒杀结果，data为null表示仍在排队或结果确认中
+     * 无法识别的ticket、超过排队时限仍无结果或结果已过期的ticket返回不存在
+     */
+    public Result<SeckillResult> getResult(String ticket) {
+        long submittedAt = submittedAt(ticket);
+        if (submittedAt <= 0) {
+            return Result.notFound("秒杀请求不存在或已过期");
+        }
+        String json = stringRedisTemplate.opsForValue().get(RESULT_KEY_PREFIX + ticket);
+        if (json == null) {
+            return System.currentTimeMillis() - submittedAt < pendingTimeoutMillis
+                    ? Result.success("排队中", null)
+                    : Result.notFound("秒杀请求不存在或已过期");
+        }
+        SeckillResult result = JSON.parseObject(json, SeckillResult.class);
+        if (result.getSuccess() == null) {
+            return resolveUnknown(result);
+        }
+        return Boolean.TRUE.equals(result.getSuccess())
+                ? Result.success(result.getMessage(), result)
+                : Result.error(result.getMessage());
+    }
+    
+    /**
+     * 工作线程：阻塞取出一个请求，再在微批窗口内继续收集，凑满一批或窗口结束后整批执行
+     */
+    private void drainLoop() {
+        List<Task> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                collect(batch);
+                process(batch);
+            } catch (InterruptedException e) {
+                // 停机时已取出未执行的请求写回失败（先写回再恢复中断标记，避免Redis调用被中断）
+                if (!batch.isEmpty()) {
+                    failAll(batch);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("写回秒杀结果失败: 批大小={}", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void collect(List<Task> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            Task next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+    
+    private void process(List<Task> batch) {
+        List<SeckillRequest> requests = new ArrayList<>(batch.size());
+        for (Task task : batch) {
+            requests.add(task.request);
+        }
+        
+        List<SeckillResult> results;
+        try {
+            results = couponSeckillService.seckillBatch(requests);
+        } catch (Exception e) {
+            log.error("批量秒杀失败，稍后按请求令牌重试: 批大小={}", batch.size(), e);
+            retryLater(batch);
+            return;
+        }
+        writeResults(batch, results);
+    }
+    
+    /**
+     * 批量秒杀异常后延迟重新入队
+     * 请求令牌保证重试幂等：首次已成功的请求重试时返回首次结果，未生效的请求正常秒杀；
+     * 超过重试次数或无法重新入队的请求写回“结果确认中”，不写失败结果
+     */
+    private void retryLater(List<Task> batch) {
+        List<Task> unresolved = new ArrayList<>();
+        for (Task task : batch) {
+            task.attempts++;
+            if (!running || task.attempts > retryAttempts) {
+                unresolved.add(task);
+                continue;
+            }
+            try {
+                taskScheduler.schedule(() -> requeue(task),
+                        Instant.now().plusMillis(retryBackoffMillis * task.attempts));
+            } catch (Exception e) {
+                log.warn("秒杀请求重试调度失败: ticket={}", task.ticket, e);
+                unresolved.add(task);
+            }
+        }
+        if (!unresolved.isEmpty()) {
+            writeUnknown(unresolved);
+        }
+    }
+    
+    private void requeue(Task task) {
+        if (!running || !queue.offer(task)) {
+            writeUnknown(Collections.singletonList(task));
+        }
+    }
+    
+    private void writeUnknown(List<Task> tasks) {
+        List<SeckillRequest> requests = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            requests.add(task.request);
+        }
+        try {
+            writeResults(tasks, unknownResults(requests));
+            log.warn("秒杀请求结果待确认: 数量={}", tasks.size());
+        } catch (Exception e) {
+            log.error("写回秒杀待确认结果失败: 数量={}", tasks.size(), e);
+        }
+    }
+    
+    /**
+     * 结果待确认的请求按参与记录确认：按优惠券秒杀每人只能中一次，已登记即为成功；
+     * 按活动秒杀每人可抢多件，参与记录不能对应到具体请求，继续返回确认中
+     */
+    private Result<SeckillResult> resolveUnknown(SeckillResult result) {
+        if (result.getActivityId() == null
+                && couponSeckillService.checkUserSeckill(result.getUserId(), result.getCouponId())) {
+            result.setSuccess(true);
+            result.setQuantity(1);
+            result.setMessage("秒杀成功");
+            return Result.success(result.getMessage(), result);
+        }
+        return Result.success(result.getMessage(), null);
+    }
+    
+    /**
+     * 结果通过一次管道写回Redis，供任意节点查询
+     */
+    private void writeResults(List<Task> batch, List<SeckillResult> results) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < batch.size(); i++) {
+                writeResult(connection, batch.get(i).ticket, results.get(i));
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * 未执行的请求整批写回失败结果；执行过（等待重试）的请求可能已生效，写回“结果确认中”
+     */
+    private void failAll(List<Task> tasks) {
+        List<SeckillResult> results = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            results.add(task.attempts > 0
+                    ? unknownResult(task.request)
+                    : failedResult(task.request, "服务繁忙，请重新提交"));
+        }
+        try {
+            writeResults(tasks, results);
+        } catch (Exception e) {
+            log.error("写回秒杀失败结果失败: 数量={}", tasks.size(), e);
+        }
+    }
+    
+    private static SeckillResult failedResult(SeckillRequest request, String message) {
+        SeckillResult failed = new SeckillResult();
+        failed.setSuccess(false);
+        failed.setUserId(request.getUserId());
+        failed.setCouponId(request.getCouponId());
+        failed.setActivityId(request.getActivityId());
+        failed.setMessage(message);
+        return failed;
+    }
+    
+    /**
+     * 结果待确认：success为空，查询时再按参与记录确认
+     */
+    private static SeckillResult unknownResult(SeckillRequest request) {
+        SeckillResult unknown = new SeckillResult();
+        unknown.setUserId(request.getUserId());
+        unknown.setCouponId(request.getCouponId());
+        unknown.setActivityId(request.getActivityId());
+        unknown.setMessage(UNKNOWN_MESSAGE);
+        return unknown;
+    }
+    
+    private static List<SeckillResult> unknownResults(List<SeckillRequest> requests) {
+        List<SeckillResult> results = new ArrayList<>(requests.size());
+        for (SeckillRequest request : requests) {
+            results.add(unknownResult(request));
+        }
+        return results;
+    }
+    
+    /**
+     * 解析ticket中的提交时间，格式不正确时返回0
+     */
+    private static long submittedAt(String ticket) {
+        int separator = ticket != null ? ticket.indexOf('-') : -1;
+        if (separator <= 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(ticket.substring(0, separator), 36);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    private void writeResult(RedisConnection connection, String ticket, SeckillResult result) {
+        connection.setEx((RESULT_KEY_PREFIX + ticket).getBytes(StandardCharsets.UTF_8),
+                resultTtlSeconds,
+                JSON.toJSONString(result).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static class Task {
+        private final String ticket;
+        private final SeckillRequest request;
+        
+        /**
+         * 已执行失败的次数，只由持有该任务的工作线程修改
+         */
+        private int attempts;
+        
+        Task(String ticket, SeckillRequest request) {
+            this.ticket = ticket;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.coffee.couponservice.component;
+
+import com.coffee.couponservice.entity.SeckillParticipant;
+import com.coffee.couponservice.service.SeckillParticipantService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.net.InetAddress;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 秒杀参与记录批量落库
+ * 
+ * 以独立消费组读取秒杀中奖事件流，按批写入 coupon_seckill_participant 和 user_coupons，
+ * 整批事务提交后再ACK。事务提交后、ACK之前崩溃导致的重放由事件ID去重。
+ * 按优惠券秒杀的事件没有活动ID，不登记参与记录，只以事件ID为发放键发放用户优惠券。
+ */
+@Slf4j
+@Component
+public class SeckillParticipantWriter {
+    
+    private static final String GROUP = "seckill-participant";
+    
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    
+    @Autowired
+    private SeckillParticipantService participantService;
+    
+    @Autowired
+    private StreamConsumerSupport streamConsumerSupport;
+    
+    @Value("${coupon.seckill.participant.batch-size:500}")
+    private int batchSize;
+    
+    private String consumerName;
+    
+    @PostConstruct
+    public void init() {
+        try {
+            consumerName = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            consumerName = "coupon-service";
+        }
+        
+        try {
+            stringRedisTemplate.opsForStream().createGroup(
+                    CouponUsedCountWriteBehind.STREAM_KEY, ReadOffset.from("0"), GROUP);
+            log.info("创建秒杀事件消费组: stream={}, group={}", CouponUsedCountWriteBehind.STREAM_KEY, GROUP);
+        } catch (Exception e) {
+            // 消费组已存在（BUSYGROUP）
+            log.debug("秒杀事件消费组已存在: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 定时刷新：先接管其他节点的空闲事件并重放本消费者未ACK的事件，再处理新事件
+     */
+    @Scheduled(fixedDelayString = "${coupon.seckill.participant.flush-interval-ms:1000}")
+    public void flush() {
+        try {
+            streamConsumerSupport.claimIdle(CouponUsedCountWriteBehind.STREAM_KEY, GROUP, consumerName);
+            flush(ReadOffset.from("0"));
+            int read;
+            do {
+                read = flush(ReadOffset.lastConsumed());
+            } while (read >= batchSize);
+        } catch (Exception e) {
+            log.error("秒杀参与记录落库失败", e);
+        }
+    }
+    
+    /**
+     * 读取一批事件整批落库，成功后ACK
+     * @return 本批读取的事件数
+     */
+    private int flush(ReadOffset offset) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                Consumer.from(GROUP, consumerName),
+                StreamReadOptions.empty().count(batchSize),
+                StreamOffset.create(CouponUsedCountWriteBehind.STREAM_KEY, offset));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        
+        List<SeckillParticipant> participants = new ArrayList<>(records.size());
+        List<RecordId> ids = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            ids.add(record.getId());
+            SeckillParticipant participant = toParticipant(record);
+            if (participant != null) {
+                participants.add(participant);
+            }
+        }
+        
+        // 写库失败时抛出异常，不ACK，下个周期从pending列表重放
+        participantService.saveAndIssue(participants);
+        stringRedisTemplate.opsForStream().acknowledge(
+                CouponUsedCountWriteBehind.STREAM_KEY, GROUP, ids.toArray(new RecordId[0]));
+        return records.size();
+    }
+    
+    private SeckillParticipant toParticipant(MapRecord<String, Object, Object> record) {
+        Object activityId = record.getValue().get("activityId");
+        Object couponId = record.getValue().get("couponId");
+        Object userId = record.getValue().get("userId");
+        if (couponId == null || userId == null) {
+            // 无法解析的事件随整批ACK，避免反复重放
+            return null;
+        }
+        Object quantity = record.getValue().get("quantity");
+        
+        SeckillParticipant participant = new SeckillParticipant();
+        // 按优惠券秒杀的事件没有活动ID
+        participant.setActivityId(activityId != null ? Long.valueOf(activityId.toString()) : null);
+        participant.setCouponId(Long.valueOf(couponId.toString()));
+        participant.setUserId(Long.valueOf(userId.toString()));
+        participant.setQuantity(quantity != null ? Integer.parseInt(quantity.toString()) : 1);
+        participant.setEventId(record.getId().getValue());
+        // 参与时间取事件写入时间
+        participant.setCreateTime(LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(record.getId().getTimestamp()), ZoneId.systemDefault()));
+        return participant;
+    }
+}
@@ -0,0 +1,149 @@
+package com.coffee.couponservice.component;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 秒杀售罄标记（节点本地）
+ * 库存扣完后在本地打标，后续请求无需访问Redis即可直接返回
+ * 
+ * 按优惠券秒杀和按活动秒杀使用各自的库存，标记分开记录：
+ * 活动售罄或下线不影响同一优惠券的其他活动和按优惠券秒杀，活动预热时清除该活动的标记。
+ * 
+ * 标记变化通过Redis发布订阅广播给所有优惠券服务实例：
+ * 消息格式为 "soldout:{couponId}" / "reset:{couponId}" / "activity-soldout:{activityId}" / "activity-reset:{activityId}"
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutRegistry implements MessageListener {
+    
+    /**
+     * 售罄广播频道
+     */
+    public static final String CHANNEL = "seckill:soldout";
+    
+    private static final String SOLD_OUT = "soldout:";
+    private static final String RESET = "reset:";
+    private static final String ACTIVITY_SOLD_OUT = "activity-soldout:";
+    private static final String ACTIVITY_RESET = "activity-reset:";
+    
+    private final Set<Long> soldOutCoupons = ConcurrentHashMap.newKeySet();
+    
+    private final Set<Long> soldOutActivities = ConcurrentHashMap.newKeySet();
+    
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+    
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+    
+    /**
+     * 是否已售罄
+     */
+    public boolean isSoldOut(Long couponId) {
+        return soldOutCoupons.contains(couponId);
+    }
+    
+    /**
+     * 秒杀请求是否已售罄：携带活动ID时看活动标记，否则看优惠券标记
+     */
+    public boolean isSoldOut(Long couponId, Long activityId) {
+        return activityId != null ? soldOutActivities.contains(activityId) : soldOutCoupons.contains(couponId);
+    }
+    
+    /**
+     * 标记售罄并广播
+     */
+    public void markSoldOut(Long couponId) {
+        if (soldOutCoupons.add(couponId)) {
+            log.info("优惠券 {} 秒杀库存已售罄", couponId);
+            publish(SOLD_OUT + couponId);
+        }
+    }
+    
+    /**
+     * 仅在本节点标记售罄，不广播
+     * 租约模式下其他节点可能仍持有未发放的库存
+     */
+    public void markSoldOutLocally(Long couponId) {
+        if (soldOutCoupons.add(couponId)) {
+            log.info("优惠券 {} 本节点秒杀库存已耗尽", couponId);
+        }
+    }
+    
+    /**
+     * 清除售罄标记并广播（重新初始化库存时调用）
+     */
+    public void clear(Long couponId) {
+        soldOutCoupons.remove(couponId);
+        publish(RESET + couponId);
+    }
+    
+    /**
+     * 标记活动售罄并广播
+     */
+    public void markActivitySoldOut(Long activityId) {
+        if (soldOutActivities.add(activityId)) {
+            log.info("秒杀活动 {} 库存已售罄", activityId);
+            publish(ACTIVITY_SOLD_OUT + activityId);
+        }
+    }
+    
+    /**
+     * 仅在本节点标记活动售罄，不广播（预热时与Redis库存同步）
+     */
+    public void markActivitySoldOutLocally(Long activityId) {
+        soldOutActivities.add(activityId);
+    }
+    
+    /**
+     * 清除活动售罄标记并广播（活动预热时调用）
+     */
+    public void clearActivity(Long activityId) {
+        soldOutActivities.remove(activityId);
+        publish(ACTIVITY_RESET + activityId);
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            if (body.startsWith(SOLD_OUT)) {
+                soldOutCoupons.add(Long.valueOf(body.substring(SOLD_OUT.length())));
+            } else if (body.startsWith(RESET)) {
+                soldOutCoupons.remove(Long.valueOf(body.substring(RESET.length())));
+            } else if (body.startsWith(ACTIVITY_SOLD_OUT)) {
+                soldOutActivities.add(Long.valueOf(body.substring(ACTIVITY_SOLD_OUT.length())));
+            } else if (body.startsWith(ACTIVITY_RESET)) {
+                soldOutActivities.remove(Long.valueOf(body.substring(ACTIVITY_RESET.length())));
+            }
+        } catch (NumberFormatException e) {
+            log.warn("无法识别的售罄广播消息: {}", body);
+        }
+    }
+    
+    private void publish(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, message);
+        } catch (Exception e) {
+            // 广播失败不影响本地标记，其他节点会在下一次Lua调用时自行标记
+            log.warn("广播售罄标记失败: {}", message, e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.coffee.couponservice.component;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 秒杀库存租约
+ * 
+ * 节点一次从 seckill:stock:{couponId} 租借一批库存（默认200件），
+ * 之后由本地 AtomicInteger 发放，库存键的写入频率降低两个数量级。
+ * 租约到期或服务关闭时，未发放的库存归还Redis。
+ */
+@Slf4j
+@Component
+public class SeckillStockLease {
+    
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    
+    @Autowired
+    private SeckillSoldOutRegistry soldOutRegistry;
+    
+    @Value("${coupon.seckill.lease.batch-size:200}")
+    private int batchSize;
+    
+    @Value("${coupon.seckill.lease.ttl-ms:30000}")
+    private long leaseTtlMillis;
+    
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+    
+    private final Map<Long, Object> refillLocks = new ConcurrentHashMap<>();
+    
+    // Lua脚本：租借一批库存
+    private final DefaultRedisScript<Long> leaseScript;
+    
+    // Lua脚本：归还库存（库存键已下线时不归还）
+    private final DefaultRedisScript<Long> returnScript;
+    
+    public SeckillStockLease() {
+        leaseScript = new DefaultRedisScript<>();
+        leaseScript.setResultType(Long.class);
+        leaseScript.setLocation(new ClassPathResource("lua/seckill_stock_lease.lua"));
+        
+        returnScript = new DefaultRedisScript<>();
+        returnScript.setResultType(Long.class);
+        returnScript.setLocation(new ClassPathResource("lua/seckill_stock_return.lua"));
+    }
+    
+    /**
+     * 从本地租约获取一件库存，本地不足时向Redis续租
+     * @return false表示总库存已耗尽
+     */
+    public boolean tryAcquire(Long couponId) {
+        Lease lease = leases.get(couponId);
+        if (lease != null && lease.tryTake()) {
+            return true;
+        }
+        
+        synchronized (refillLocks.computeIfAbsent(couponId, k -> new Object())) {
+            lease = leases.get(couponId);
+            if (lease != null && lease.tryTake()) {
+                return true;
+            }
+            
+            Long leased = stringRedisTemplate.execute(leaseScript,
+                    Collections.singletonList(stockKey(couponId)), String.valueOf(batchSize));
+            if (leased == null || leased <= 0) {
+                return false;
+            }
+            
+            // 其中一件直接发给当前请求
+            Lease old = leases.put(couponId,
+                    new Lease((int) (leased - 1), System.currentTimeMillis() + leaseTtlMillis));
+            if (old != null) {
+                giveBack(couponId, old.drain());
+            }
+            log.info("租借优惠券 {} 秒杀库存: {}", couponId, leased);
+            return true;
+        }
+    }
+    
+    /**
+     * 归还一件未实际发放的库存（如用户重复参与）
+     */
+    public void release(Long couponId) {
+        Lease lease = leases.get(couponId);
+        if (lease != null) {
+            lease.remaining.incrementAndGet();
+        } else {
+            giveBack(couponId, 1);
+        }
+    }
+    
+    /**
+     * 归还已过期租约中未发放的库存
+     */
+    @Scheduled(fixedDelayString = "${coupon.seckill.lease.sweep-interval-ms:5000}")
+    public void returnExpiredLeases() {
+        long now = System.currentTimeMillis();
+        leases.forEach((couponId, lease) -> {
+            if (lease.expireAt <= now && leases.remove(couponId, lease)) {
+                giveBack(couponId, lease.drain());
+            }
+        });
+    }
+    
+    /**
+     * 服务关闭时归还全部租约
+     */
+    @PreDestroy
+    public void returnAllLeases() {
+        leases.forEach((couponId, lease) -> {
+            if (leases.remove(couponId, lease)) {
+                giveBack(couponId, lease.drain());
+            }
+        });
+    }
+    
+    private void giveBack(Long couponId, int amount) {
+        if (amount <= 0) {
+            return;
+        }
+        try {
+            Long stock = stringRedisTemplate.execute(returnScript,
+                    Collections.singletonList(stockKey(couponId)), String.valueOf(amount));
+            if (stock == null || stock < 0) {
+                // 活动已结束，库存键已被删除
+                log.info("优惠券 {} 秒杀库存已下线，丢弃未发放的租约库存: {}", couponId, amount);
+                return;
+            }
+            // 库存回到Redis后，其他节点可以重新租借
+            soldOutRegistry.clear(couponId);
+            log.info("归还优惠券 {} 秒杀库存: {}", couponId, amount);
+        } catch (Exception e) {
+            log.error("归还优惠券 {} 秒杀库存失败: {}", couponId, amount, e);
+        }
+    }
+    
+    private static String stockKey(Long couponId) {
+        return "seckill:stock:" + couponId;
+    }
+    
+    private static class Lease {
+        private final AtomicInteger remaining;
+        private final long expireAt;
+        
+        Lease(int remaining, long expireAt) {
+            this.remaining = new AtomicInteger(remaining);
+            this.expireAt = expireAt;
+        }
+        
+        boolean tryTake() {
+            if (expireAt <= System.currentTimeMillis()) {
+                return false;
+            }
+            int current;
+            while ((current = remaining.get()) > 0) {
+                if (remaining.compareAndSet(current, current - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        int drain() {
+            return remaining.getAndSet(0);
+        }
+    }
+}
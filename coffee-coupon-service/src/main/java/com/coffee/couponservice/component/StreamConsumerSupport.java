@@ -0,0 +1,132 @@
+package com.coffee.couponservice.component;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Redis Stream 消费组公共操作
+ *
+ * 1. 接管空闲事件：消费者名取主机名，节点下线或更换主机名后，它pending列表里的事件不会再被自己重放。
+ *    存活节点把空闲超过阈值的事件XCLAIM到自己名下，随后按本消费者的pending列表正常重放。
+ * 2. 安全裁剪：同一个流可能被多个消费组读取，只裁掉所有消费组都已ACK的事件。
+ * 3. 积压检查：判断消费组是否还有未处理完的事件。
+ */
+@Slf4j
+@Component
+public class StreamConsumerSupport {
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${coupon.stream.claim-min-idle-ms:60000}")
+    private long claimMinIdleMillis;
+
+    @Value("${coupon.stream.claim-batch-size:500}")
+    private int claimBatchSize;
+
+    /**
+     * 把其他消费者空闲过久的pending事件转到当前消费者名下
+     * @return 接管的事件数
+     */
+    public int claimIdle(String streamKey, String group, String consumerName) {
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(streamKey, group, Range.unbounded(), claimBatchSize);
+        if (pending == null || pending.isEmpty()) {
+            return 0;
+        }
+
+        List<RecordId> idle = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (!consumerName.equals(message.getConsumerName())
+                    && message.getElapsedTimeSinceLastDelivery().toMillis() >= claimMinIdleMillis) {
+                idle.add(message.getId());
+            }
+        }
+        if (idle.isEmpty()) {
+            return 0;
+        }
+
+        // XCLAIM 再次校验空闲时间，原消费者刚好恢复处理时不会被抢走
+        stringRedisTemplate.opsForStream().claim(streamKey, group, consumerName,
+                Duration.ofMillis(claimMinIdleMillis), idle.toArray(new RecordId[0]));
+        log.warn("接管空闲事件: stream={}, group={}, 数量={}", streamKey, group, idle.size());
+        return idle.size();
+    }
+
+    /**
+     * 消费组是否有积压：存在已投递未ACK的事件，或最后投递ID落后于事件流最新ID
+     * 事件流或消费组不存在时视为无积压
+     */
+    public boolean hasBacklog(String streamKey, String group) {
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(streamKey))) {
+            return false;
+        }
+        StreamInfo.XInfoStream stream = stringRedisTemplate.opsForStream().info(streamKey);
+        StreamInfo.XInfoGroups groups = stringRedisTemplate.opsForStream().groups(streamKey);
+        if (stream == null || groups == null) {
+            return false;
+        }
+        for (StreamInfo.XInfoGroup info : groups) {
+            if (group.equals(info.groupName())) {
+                return info.pendingCount() > 0 || !stream.lastGeneratedId().equals(info.lastDeliveredId());
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 裁剪所有消费组都已ACK的事件
+     * 每个消费组的安全位置：有pending时为最小pending ID，否则为最后投递ID；取各组最小值按MINID裁剪
+     */
+    public void trimAcknowledged(String streamKey) {
+        StreamInfo.XInfoGroups groups = stringRedisTemplate.opsForStream().groups(streamKey);
+        if (groups == null || groups.isEmpty()) {
+            return;
+        }
+
+        RecordId minId = null;
+        for (StreamInfo.XInfoGroup group : groups) {
+            RecordId safeId = RecordId.of(group.lastDeliveredId());
+            if (group.pendingCount() > 0) {
+                PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(streamKey, group.groupName());
+                if (summary != null && summary.minMessageId() != null) {
+                    safeId = RecordId.of(summary.minMessageId());
+                }
+            }
+            if (minId == null || compare(safeId, minId) < 0) {
+                minId = safeId;
+            }
+        }
+
+        String minIdValue = minId.getValue();
+        if ("0-0".equals(minIdValue)) {
+            return;
+        }
+        // 近似裁剪（~），只删除整个宏节点，开销更小
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XTRIM",
+                streamKey.getBytes(StandardCharsets.UTF_8),
+                "MINID".getBytes(StandardCharsets.UTF_8),
+                "~".getBytes(StandardCharsets.UTF_8),
+                minIdValue.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static int compare(RecordId a, RecordId b) {
+        int byTime = Long.compare(a.getTimestamp(), b.getTimestamp());
+        return byTime != 0 ? byTime : Long.compare(a.getSequence(), b.getSequence());
+    }
+}
@@ -0,0 +1,215 @@
+package com.coffee.couponservice.component;
+
+import com.coffee.couponservice.mapper.CouponMapper;
+import com.coffee.couponservice.mapper.UserCouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户优惠券过期清理
+ *
+ * 以优惠券结束时间驱动（coupons.idx_end_time），逐张优惠券分块处理用户优惠券（user_coupons.idx_coupon_status 覆盖）：
+ * 1. 已结束优惠券下未使用（1）的用户优惠券标记为已过期（3）
+ * 2. 结束超过保留期的优惠券下已使用、已过期的用户优惠券复制到 user_coupons_history 后从热表删除
+ * 每块按ID批量更新，块之间按限速休眠，不与线上请求争抢数据库；
+ * 已处理到的结束时间保存为水位，下次只扫描水位之后（留出宽限期）结束的优惠券，中途失败时下次从上一个水位重做。
+ * 集群内通过分布式锁保证同一时间只有一个节点清理。
+ */
+@Slf4j
+@Component
+public class UserCouponExpirySweeper {
+
+    private static final String LOCK_KEY = "coupon:expiry:lock";
+
+    private static final String EXPIRE_WATERMARK_KEY = "coupon:expiry:watermark:expire";
+
+    private static final String ARCHIVE_WATERMARK_KEY = "coupon:expiry:watermark:archive";
+
+    // 用户优惠券状态
+    private static final int STATUS_UNUSED = 1;
+    private static final int STATUS_USED = 2;
+    private static final int STATUS_EXPIRED = 3;
+
+    @Autowired
+    private CouponMapper couponMapper;
+
+    @Autowired
+    private UserCouponMapper userCouponMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${coupon.expiry.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${coupon.expiry.max-rows-per-second:2000}")
+    private int maxRowsPerSecond;
+
+    @Value("${coupon.expiry.archive-after-days:90}")
+    private long archiveAfterDays;
+
+    /**
+     * 水位回退的宽限期：优惠券结束后仍可能有异步落库的领取记录
+     */
+    @Value("${coupon.expiry.grace-hours:24}")
+    private long graceHours;
+
+    // 清理指标
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong expiredTotal = new AtomicLong();
+    private final AtomicLong archivedTotal = new AtomicLong();
+    private final AtomicLong lastExpired = new AtomicLong();
+    private final AtomicLong lastArchived = new AtomicLong();
+    private final AtomicLong lastRunMillis = new AtomicLong();
+    private final AtomicLong lastRunAt = new AtomicLong();
+
+    @Scheduled(fixedDelayString = "${coupon.expiry.interval-ms:300000}",
+            initialDelayString = "${coupon.expiry.initial-delay-ms:60000}")
+    public void sweep() {
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            long expired = expire(now);
+            long archived = archive(now.minusDays(archiveAfterDays));
+
+            runs.incrementAndGet();
+            lastExpired.set(expired);
+            lastArchived.set(archived);
+            expiredTotal.addAndGet(expired);
+            archivedTotal.addAndGet(archived);
+            lastRunMillis.set(System.currentTimeMillis() - start);
+            lastRunAt.set(start);
+            if (expired > 0 || archived > 0) {
+                log.info("用户优惠券过期清理: 标记过期={}, 归档={}, 耗时={}ms", expired, archived, lastRunMillis.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("用户优惠券过期清理失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已结束优惠券下未使用的用户优惠券标记为已过期
+     */
+    private long expire(LocalDateTime before) throws InterruptedException {
+        long total = 0;
+        for (Long couponId : couponMapper.selectEndedIds(watermark(EXPIRE_WATERMARK_KEY), before)) {
+            while (true) {
+                List<Long> ids = userCouponMapper.selectIdsByCouponIdAndStatus(
+                        couponId, Collections.singletonList(STATUS_UNUSED), chunkSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                long chunkStart = System.currentTimeMillis();
+                total += userCouponMapper.batchUpdateStatus(ids, STATUS_UNUSED, STATUS_EXPIRED);
+                pace(ids.size(), chunkStart);
+                if (ids.size() < chunkSize) {
+                    break;
+                }
+            }
+        }
+        saveWatermark(EXPIRE_WATERMARK_KEY, before);
+        return total;
+    }
+
+    /**
+     * 结束超过保留期的优惠券下已使用、已过期的用户优惠券移入历史表
+     */
+    private long archive(LocalDateTime before) throws InterruptedException {
+        long total = 0;
+        List<Integer> statuses = Arrays.asList(STATUS_USED, STATUS_EXPIRED);
+        for (Long couponId : couponMapper.selectEndedIds(watermark(ARCHIVE_WATERMARK_KEY), before)) {
+            while (true) {
+                List<Long> ids = userCouponMapper.selectIdsByCouponIdAndStatus(couponId, statuses, chunkSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                long chunkStart = System.currentTimeMillis();
+                Integer deleted = transactionTemplate.execute(status -> {
+                    userCouponMapper.archiveByIds(ids);
+                    return userCouponMapper.deleteByIds(ids);
+                });
+                total += deleted == null ? 0 : deleted;
+                pace(ids.size(), chunkStart);
+                if (ids.size() < chunkSize) {
+                    break;
+                }
+            }
+        }
+        saveWatermark(ARCHIVE_WATERMARK_KEY, before);
+        return total;
+    }
+
+    /**
+     * 限速：本块行数按每秒上限折算的耗时未用完时休眠补足
+     */
+    private void pace(int rows, long chunkStart) throws InterruptedException {
+        long budget = rows * 1000L / Math.max(1, maxRowsPerSecond);
+        long elapsed = System.currentTimeMillis() - chunkStart;
+        if (budget > elapsed) {
+            Thread.sleep(budget - elapsed);
+        }
+    }
+
+    /**
+     * 上次处理到的结束时间减去宽限期，首次执行时为null（处理全部历史）
+     */
+    private LocalDateTime watermark(String key) {
+        String value = stringRedisTemplate.opsForValue().get(key);
+        if (value == null) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(value)), ZoneId.systemDefault())
+                .minusHours(graceHours);
+    }
+
+    private void saveWatermark(String key, LocalDateTime value) {
+        stringRedisTemplate.opsForValue().set(key,
+                String.valueOf(value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+    }
+
+    /**
+     * 清理指标：累计/最近一次标记过期和归档数量、耗时
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("runs", runs.get());
+        metrics.put("lastRunAt", lastRunAt.get());
+        metrics.put("lastRunMillis", lastRunMillis.get());
+        metrics.put("lastExpired", lastExpired.get());
+        metrics.put("lastArchived", lastArchived.get());
+        metrics.put("expiredTotal", expiredTotal.get());
+        metrics.put("archivedTotal", archivedTotal.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,47 @@
+package com.coffee.couponservice.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * RabbitMQ配置类
+ * 秒杀成功事件通过订单交换机投递，开启发布确认和退回，由 SeckillEventPublisher 处理确认结果
+ */
+@Slf4j
+@Configuration
+public class RabbitMQConfig {
+
+    // 订单交换机和路由键（队列由订单服务声明）
+    public static final String ORDER_EXCHANGE = "order.exchange";
+    public static final String ORDER_CREATE_ROUTING_KEY = "order.create";
+
+    /**
+     * RabbitTemplate配置
+     */
+    @Bean
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof CachingConnectionFactory) {
+            // 等同于 spring.rabbitmq.publisher-confirm-type=correlated / publisher-returns=true，
+            // 避免配置中心漏配导致确认结果永远不返回
+            CachingConnectionFactory cachingConnectionFactory = (CachingConnectionFactory) connectionFactory;
+            cachingConnectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+            cachingConnectionFactory.setPublisherReturns(true);
+        }
+
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        rabbitTemplate.setMessageConverter(new Jackson2JsonMessageConverter());
+
+        // 路由不到队列的消息退回，而不是被静默丢弃
+        rabbitTemplate.setMandatory(true);
+        rabbitTemplate.setReturnsCallback(returned ->
+                log.warn("消息被退回: exchange={}, routingKey={}, 原因={}",
+                        returned.getExchange(), returned.getRoutingKey(), returned.getReplyText()));
+
+        return rabbitTemplate;
+    }
+}
@@ -96,11 +96,11 @@ public class SentinelConfig {
         claimRule.setControlBehavior(RuleConstant.CONTROL_BEHAVIOR_DEFAULT);
         rules.add(claimRule);
         
-        // 5. 用户维度限流规则（防止单个用户过度请求）
+        // 5. 秒杀全局兜底限流规则（单一资源，不区分用户；按用户、按IP限流在网关 RateLimitFilter 中完成）
         FlowRule userRule = new FlowRule();
         userRule.setResource("userSeckill");
         userRule.setGrade(RuleConstant.FLOW_GRADE_QPS);
-        userRule.setCount(10); // 每个用户每秒最多10个请求
+        userRule.setCount(10); // 所有用户合计每秒最多10个请求
         userRule.setStrategy(RuleConstant.STRATEGY_DIRECT);
         userRule.setControlBehavior(RuleConstant.CONTROL_BEHAVIOR_DEFAULT);
         rules.add(userRule);
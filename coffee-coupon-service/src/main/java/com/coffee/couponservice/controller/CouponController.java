@@ -1,21 +1,33 @@
 package com.coffee.couponservice.controller;
 
 import com.coffee.common.result.Result;
+import com.coffee.couponservice.component.CouponIssueJobRunner;
+import com.coffee.couponservice.component.CouponLocalCache;
+import com.coffee.couponservice.component.CouponStockReconciler;
+import com.coffee.couponservice.component.SeckillEventPublisher;
+import com.coffee.couponservice.component.SeckillIngressQueue;
+import com.coffee.couponservice.component.SeckillSoldOutRegistry;
+import com.coffee.couponservice.component.UserCouponExpirySweeper;
+import com.coffee.couponservice.dto.IssueBatchRequest;
+import com.coffee.couponservice.dto.PageCursor;
 import com.coffee.couponservice.dto.SeckillRequest;
 import com.coffee.couponservice.dto.SeckillResult;
 import com.coffee.couponservice.entity.Coupon;
 import com.coffee.couponservice.entity.SeckillActivity;
-import com.coffee.couponservice.mapper.SeckillActivityMapper;
 import com.coffee.couponservice.service.CouponSeckillService;
 import com.coffee.couponservice.service.CouponService;
+import com.coffee.couponservice.service.SeckillActivityService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * 优惠券控制器
@@ -32,10 +44,32 @@ public class CouponController {
     private CouponService couponService;
 
     @Autowired
-    private SeckillActivityMapper seckillActivityMapper;
+    private SeckillActivityService seckillActivityService;
+
+    @Autowired
+    private SeckillIngressQueue seckillIngressQueue;
+
+    @Autowired
+    private SeckillSoldOutRegistry soldOutRegistry;
+
+    @Autowired
+    private SeckillEventPublisher seckillEventPublisher;
+
+    @Autowired
+    private CouponStockReconciler stockReconciler;
+
+    @Autowired
+    private CouponLocalCache couponLocalCache;
+
+    @Autowired
+    private CouponIssueJobRunner couponIssueJobRunner;
+
+    @Autowired
+    private UserCouponExpirySweeper expirySweeper;
 
     /**
      * 分页查询优惠券（管理端）
+     * 传入上一页返回的 nextCursor 时按游标定位（推荐），否则按页码跳过
      */
     @GetMapping("/coupon/page")
     public Result<Map<String, Object>> getCouponPage(
@@ -43,28 +77,26 @@ public class CouponController {
             @RequestParam(required = false, defaultValue = "10") Integer pageSize,
             @RequestParam(required = false) String name,
             @RequestParam(required = false) Integer status,
-            @RequestParam(required = false) Integer type) {
+            @RequestParam(required = false) Integer type,
+            @RequestParam(required = false) String cursor) {
         try {
-            log.info("接收优惠券列表请求: page={}, pageSize={}, name={}, status={}, type={}",
-                    page, pageSize, name, status, type);
+            log.info("接收优惠券列表请求: page={}, pageSize={}, name={}, status={}, type={}, cursor={}",
+                    page, pageSize, name, status, type, cursor);
 
-            // 查询优惠券列表
-            List<Coupon> coupons = couponService.getCouponList(name, status, type);
+            // 数据库分页，总数按筛选条件缓存
+            List<Coupon> pagedCoupons = couponService.getCouponPage(
+                    name, status, type, PageCursor.parse(cursor), page, pageSize);
             long total = couponService.countCoupons(name, status, type);
 
-            // 手动分页
-            int start = (page - 1) * pageSize;
-            int end = Math.min(start + pageSize, coupons.size());
-            List<Coupon> pagedCoupons = coupons.stream()
-                    .skip(start)
-                    .limit(pageSize)
-                    .collect(Collectors.toList());
-
             Map<String, Object> result = new HashMap<>();
             result.put("records", pagedCoupons);
             result.put("total", total);
             result.put("current", page);
             result.put("size", pageSize);
+            if (pagedCoupons.size() == pageSize) {
+                Coupon last = pagedCoupons.get(pagedCoupons.size() - 1);
+                result.put("nextCursor", PageCursor.of(last.getCreateTime(), last.getId()).encode());
+            }
 
             log.info("返回优惠券列表: 共{}条, 当前页{}条", total, pagedCoupons.size());
             return Result.success(result);
@@ -74,8 +106,69 @@ public class CouponController {
         }
     }
 
+    /**
+     * 导出优惠券（管理端，CSV）
+     * 数据库流式读取并逐行写出，不在内存中保留完整结果
+     */
+    @GetMapping("/coupon/export")
+    public void exportCoupons(@RequestParam(required = false) String name,
+                              @RequestParam(required = false) Integer status,
+                              @RequestParam(required = false) Integer type,
+                              HttpServletResponse response) throws IOException {
+        log.info("导出优惠券: name={}, status={}, type={}", name, status, type);
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=coupons.csv");
+        PrintWriter writer = response.getWriter();
+        writer.println("id,name,type,discountValue,minAmount,totalCount,usedCount,startTime,endTime,status,createTime");
+        couponService.exportCoupons(name, status, type, c -> writer.println(String.join(",",
+                csv(c.getId()), csv(c.getName()), csv(c.getType()), csv(c.getDiscountValue()), csv(c.getMinAmount()),
+                csv(c.getTotalCount()), csv(c.getUsedCount()), csv(c.getStartTime()), csv(c.getEndTime()),
+                csv(c.getStatus()), csv(c.getCreateTime()))));
+        writer.flush();
+    }
+
+    /**
+     * 批量发券（管理端，营销活动定向发放）
+     * 任务在后台分块执行，返回任务ID，通过 /coupon/issue-batch/{jobId} 查询进度
+     */
+    @PostMapping("/coupon/{id}/issue-batch")
+    public Result<String> issueBatch(@PathVariable Long id, @RequestBody IssueBatchRequest request) {
+        try {
+            return couponIssueJobRunner.submit(id, request);
+        } catch (Exception e) {
+            log.error("提交批量发券任务失败: {}", e.getMessage(), e);
+            return Result.error("提交失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询批量发券任务进度
+     */
+    @GetMapping("/coupon/issue-batch/{jobId}")
+    public Result<Map<String, Object>> getIssueBatchProgress(@PathVariable String jobId) {
+        Map<String, Object> progress = couponIssueJobRunner.progress(jobId);
+        return progress != null ? Result.success(progress) : Result.notFound("任务不存在或已过期");
+    }
+
+    /**
+     * 继续执行失败的批量发券任务
+     */
+    @PostMapping("/coupon/issue-batch/{jobId}/resume")
+    public Result<String> resumeIssueBatch(@PathVariable String jobId) {
+        return couponIssueJobRunner.resume(jobId) ? Result.success("任务已继续") : Result.notFound("任务不存在或已过期");
+    }
+
+    /**
+     * 优惠券缓存指标（命中率、加载耗时、回源次数）
+     */
+    @GetMapping("/coupon/cache/metrics")
+    public Result<Map<String, Object>> getCouponCacheMetrics() {
+        return Result.success(couponLocalCache.metrics());
+    }
+
     /**
      * 分页查询秒杀活动列表（管理端）
+     * 传入上一页返回的 nextCursor 时按游标定位（推荐），否则按页码跳过
      */
     @GetMapping("/coupon/seckill/page")
     public Result<Map<String, Object>> getSeckillPage(
@@ -83,27 +176,26 @@ public class CouponController {
             @RequestParam(required = false, defaultValue = "10") Integer pageSize,
             @RequestParam(required = false) String name,
             @RequestParam(required = false) Integer status,
-            @RequestParam(required = false) Long couponId) {
+            @RequestParam(required = false) Long couponId,
+            @RequestParam(required = false) String cursor) {
         try {
-            log.info("接收秒杀活动列表请求: page={}, pageSize={}, name={}, status={}, couponId={}",
-                    page, pageSize, name, status, couponId);
-
-            // 查询秒杀活动列表
-            List<SeckillActivity> activities = seckillActivityMapper.selectSeckillList(name, status, couponId);
-            long total = seckillActivityMapper.countSeckills(name, status, couponId);
+            log.info("接收秒杀活动列表请求: page={}, pageSize={}, name={}, status={}, couponId={}, cursor={}",
+                    page, pageSize, name, status, couponId, cursor);
 
-            // 手动分页
-            int start = (page - 1) * pageSize;
-            List<SeckillActivity> pagedActivities = activities.stream()
-                    .skip(start)
-                    .limit(pageSize)
-                    .collect(Collectors.toList());
+            // 数据库分页，总数按筛选条件缓存
+            List<SeckillActivity> pagedActivities = seckillActivityService.getSeckillPage(
+                    name, status, couponId, PageCursor.parse(cursor), page, pageSize);
+            long total = seckillActivityService.countSeckills(name, status, couponId);
 
             Map<String, Object> result = new HashMap<>();
             result.put("records", pagedActivities);
             result.put("total", total);
             result.put("current", page);
             result.put("size", pageSize);
+            if (pagedActivities.size() == pageSize) {
+                SeckillActivity last = pagedActivities.get(pagedActivities.size() - 1);
+                result.put("nextCursor", PageCursor.of(last.getCreateTime(), last.getId()).encode());
+            }
 
             log.info("返回秒杀活动列表: 共{}条, 当前页{}条", total, pagedActivities.size());
             return Result.success(result);
@@ -113,6 +205,26 @@ public class CouponController {
         }
     }
 
+    /**
+     * 导出秒杀活动（管理端，CSV）
+     */
+    @GetMapping("/coupon/seckill/export")
+    public void exportSeckills(@RequestParam(required = false) String name,
+                               @RequestParam(required = false) Integer status,
+                               @RequestParam(required = false) Long couponId,
+                               HttpServletResponse response) throws IOException {
+        log.info("导出秒杀活动: name={}, status={}, couponId={}", name, status, couponId);
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=seckill-activities.csv");
+        PrintWriter writer = response.getWriter();
+        writer.println("id,name,couponId,seckillStock,perUserLimit,startTime,endTime,status,createTime");
+        seckillActivityService.exportSeckills(name, status, couponId, a -> writer.println(String.join(",",
+                csv(a.getId()), csv(a.getName()), csv(a.getCouponId()), csv(a.getSeckillStock()),
+                csv(a.getPerUserLimit()), csv(a.getStartTime()), csv(a.getEndTime()), csv(a.getStatus()),
+                csv(a.getCreateTime()))));
+        writer.flush();
+    }
+
     /**
      * 创建秒杀活动（管理端）
      */
@@ -133,7 +245,7 @@ public class CouponController {
             activity.setStatus(1); // 默认状态为1（进行中）
 
             // 插入数据库
-            seckillActivityMapper.insert(activity);
+            seckillActivityService.createSeckill(activity);
 
             log.info("创建秒杀活动成功: id={}", activity.getId());
             return Result.success("创建成功");
@@ -148,6 +260,10 @@ public class CouponController {
      */
     @PostMapping("/coupon/seckill/claim")
     public Result<SeckillResult> seckillCoupon(@RequestBody SeckillRequest request) {
+        // 已售罄直接返回，不再访问Redis
+        if (soldOutRegistry.isSoldOut(request.getCouponId(), request.getActivityId())) {
+            return Result.error("秒杀失败，库存不足");
+        }
         try {
             return couponSeckillService.seckillCoupon(request);
         } catch (Exception e) {
@@ -156,6 +272,46 @@ public class CouponController {
         }
     }
 
+    /**
+     * 用户秒杀优惠券（异步）
+     * 请求进入队列后立即返回ticket，通过 /coupon/seckill/result/{ticket} 查询结果
+     */
+    @PostMapping("/coupon/seckill/async")
+    public Result<String> seckillCouponAsync(@RequestBody SeckillRequest request) {
+        try {
+            return seckillIngressQueue.submit(request);
+        } catch (Exception e) {
+            log.error("提交秒杀请求失败: {}", e.getMessage());
+            return Result.error("秒杀失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询异步秒杀结果（data为空表示仍在排队）
+     */
+    @GetMapping("/coupon/seckill/result/{ticket}")
+    public Result<SeckillResult> getSeckillResult(@PathVariable String ticket) {
+        try {
+            return seckillIngressQueue.getResult(ticket);
+        } catch (Exception e) {
+            log.error("查询秒杀结果失败: {}", e.getMessage());
+            return Result.error("查询失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 秒杀成功事件发布指标（发送/确认/失败数量、确认耗时、积压）
+     */
+    @GetMapping("/coupon/seckill/publisher/metrics")
+    public Result<Map<String, Object>> getSeckillPublisherMetrics() {
+        try {
+            return Result.success(seckillEventPublisher.metrics());
+        } catch (Exception e) {
+            log.error("查询秒杀事件发布指标失败: {}", e.getMessage());
+            return Result.error("查询失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 初始化秒杀库存
      */
@@ -199,7 +355,23 @@ public class CouponController {
     }
 
     /**
-     * 同步库存状态
+     * 库存对账指标
+     */
+    @GetMapping("/coupon/stock/reconcile/metrics")
+    public Result<Map<String, Object>> getStockReconcileMetrics() {
+        return Result.success(stockReconciler.metrics());
+    }
+
+    /**
+     * 用户优惠券过期清理指标
+     */
+    @GetMapping("/coupon/expiry/metrics")
+    public Result<Map<String, Object>> getExpirySweeperMetrics() {
+        return Result.success(expirySweeper.metrics());
+    }
+
+    /**
+     * 同步库存状态（Redis无库存时按数据库初始化，否则只返回偏差）
      */
     @PostMapping("/coupon/sync-stock/{couponId}")
     public Result<String> syncStock(@PathVariable Long couponId) {
@@ -224,18 +396,32 @@ public class CouponController {
                 log.info("初始化Redis库存: 优惠券ID={}, 库存={}", couponId, remainingStock);
                 return Result.success("库存同步成功，已初始化Redis库存: " + remainingStock);
             } else {
-                // 同步数据库库存
+                // 不再用Redis库存覆盖数据库已使用数量（读后写存在竞争），偏差由后台对账任务增量修复
                 Integer totalCount = coupon.getTotalCount() != null ? coupon.getTotalCount() : 0;
-                Integer usedCount = Math.max(0, totalCount - redisStock);
-                couponService.updateCouponUsedCount(couponId, usedCount);
+                Integer usedCount = coupon.getUsedCount() != null ? coupon.getUsedCount() : 0;
+                int drift = totalCount - usedCount - redisStock;
 
-                log.info("同步数据库库存: 优惠券ID={}, Redis库存={}, 数据库已使用={}",
-                        couponId, redisStock, usedCount);
-                return Result.success("库存同步成功，Redis库存: " + redisStock + ", 数据库已使用: " + usedCount);
+                log.info("库存状态: 优惠券ID={}, Redis库存={}, 数据库已使用={}, 偏差={}",
+                        couponId, redisStock, usedCount, drift);
+                return Result.success("Redis库存: " + redisStock + ", 数据库已使用: " + usedCount + ", 偏差: " + drift);
             }
         } catch (Exception e) {
             log.error("同步库存失败: {}", e.getMessage());
             return Result.error("同步失败: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * CSV字段转义：包含逗号、引号或换行时加引号
+     */
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.contains(",") || text.contains("\"") || text.contains("\n")) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
+}
@@ -1,16 +1,21 @@
 package com.coffee.couponservice.controller;
 
 import com.coffee.common.result.Result;
+import com.coffee.couponservice.dto.AvailableCouponsPayload;
 import com.coffee.couponservice.service.CouponQueryService;
-import com.coffee.couponservice.vo.PublicCouponVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Collections;
-import java.util.List;
 
 /**
  * 小程序公开优惠券接口
@@ -27,14 +32,27 @@ public class PublicCouponController {
 
     /**
      * 获取当前可领取/可用的优惠券列表（适配小程序字段名）
+     * 响应带ETag，客户端携带 If-None-Match 且内容未变化时返回304
      */
     @GetMapping("/available")
-    public Result<List<PublicCouponVO>> getAvailableCoupons() {
+    public ResponseEntity<?> getAvailableCoupons(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            return Result.success(couponQueryService.listAvailableCoupons());
+            AvailableCouponsPayload payload = couponQueryService.renderAvailableCoupons(ifNoneMatch);
+            if (payload.isNotModified()) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(payload.getEtag())
+                        .cacheControl(CacheControl.noCache())
+                        .build();
+            }
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .eTag(payload.getEtag())
+                    .cacheControl(CacheControl.noCache())
+                    .body(payload.getBody());
         } catch (Exception e) {
             log.error("查询可用优惠券失败: {}", e.getMessage(), e);
-            return Result.success(Collections.emptyList());
+            return ResponseEntity.ok(Result.success(Collections.emptyList()));
         }
     }
 }
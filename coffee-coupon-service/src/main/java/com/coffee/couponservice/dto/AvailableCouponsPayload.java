@@ -0,0 +1,27 @@
+package com.coffee.couponservice.dto;
+
+import lombok.Data;
+
+/**
+ * 可领取优惠券列表响应（已序列化）
+ */
+@Data
+public class AvailableCouponsPayload {
+    
+    /**
+     * 实体标签，由列表内容和剩余库存计算
+     */
+    private String etag;
+    
+    /**
+     * 响应体JSON，客户端缓存仍然有效时为null
+     */
+    private byte[] body;
+    
+    /**
+     * 客户端缓存是否仍然有效（If-None-Match 命中）
+     */
+    public boolean isNotModified() {
+        return body == null;
+    }
+}
@@ -0,0 +1,20 @@
+package com.coffee.couponservice.dto;
+
+import lombok.Data;
+
+/**
+ * 按优惠券聚合的数量（对账使用）
+ */
+@Data
+public class CouponCount {
+    
+    /**
+     * 优惠券ID
+     */
+    private Long couponId;
+    
+    /**
+     * 数量
+     */
+    private Integer count;
+}
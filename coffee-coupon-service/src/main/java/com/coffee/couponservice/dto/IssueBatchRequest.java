@@ -0,0 +1,22 @@
+package com.coffee.couponservice.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量发券请求DTO（userIds 与 segmentKey 二选一）
+ */
+@Data
+public class IssueBatchRequest {
+    
+    /**
+     * 用户ID列表
+     */
+    private List<Long> userIds;
+    
+    /**
+     * 用户分群：营销系统预先写入的Redis集合键，成员为用户ID
+     */
+    private String segmentKey;
+}
@@ -0,0 +1,56 @@
+package com.coffee.couponservice.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * 游标分页位置（按 create_time DESC, id DESC 排序的最后一行）
+ * 对外格式为 "{创建时间毫秒}_{id}"
+ */
+@Data
+public class PageCursor {
+    
+    /**
+     * 上一页最后一行的创建时间
+     */
+    private LocalDateTime createTime;
+    
+    /**
+     * 上一页最后一行的ID
+     */
+    private Long id;
+    
+    public static PageCursor of(LocalDateTime createTime, Long id) {
+        PageCursor cursor = new PageCursor();
+        cursor.setCreateTime(createTime);
+        cursor.setId(id);
+        return cursor;
+    }
+    
+    /**
+     * 解析游标，为空时返回null
+     */
+    public static PageCursor parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        int separator = value.indexOf('_');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("无效的分页游标: " + value);
+        }
+        try {
+            long millis = Long.parseLong(value.substring(0, separator));
+            long id = Long.parseLong(value.substring(separator + 1));
+            return of(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()), id);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + value);
+        }
+    }
+    
+    public String encode() {
+        return createTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + "_" + id;
+    }
+}
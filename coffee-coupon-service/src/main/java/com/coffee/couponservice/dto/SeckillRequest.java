@@ -18,9 +18,19 @@ public class SeckillRequest {
      */
     private Long couponId;
     
+    /**
+     * 秒杀活动ID（不为空时按活动的时间窗口和每人限购校验）
+     */
+    private Long activityId;
+    
     /**
      * 秒杀数量
      */
     private Integer quantity;
+    
+    /**
+     * 请求令牌（客户端生成，重试时保持不变，用于无锁模式下的幂等）
+     */
+    private String requestToken;
 }
 
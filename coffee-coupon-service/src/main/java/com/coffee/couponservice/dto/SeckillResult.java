@@ -23,6 +23,16 @@ public class SeckillResult {
      */
     private Long couponId;
     
+    /**
+     * 秒杀活动ID
+     */
+    private Long activityId;
+    
+    /**
+     * 秒杀数量
+     */
+    private Integer quantity;
+    
     /**
      * 消息
      */
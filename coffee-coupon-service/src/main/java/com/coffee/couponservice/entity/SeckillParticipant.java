@@ -0,0 +1,36 @@
+package com.coffee.couponservice.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 秒杀参与记录实体类
+ */
+@Data
+public class SeckillParticipant {
+    
+    private Long id;
+    
+    private Long activityId;
+    
+    private Long userId;
+    
+    private Integer quantity;
+    
+    /**
+     * 状态:0-待发放,1-已发放,2-已取消
+     */
+    private Integer status;
+    
+    private Long userCouponId;
+    
+    /**
+     * 秒杀事件ID（Redis Stream记录ID），用于重放去重
+     */
+    private String eventId;
+    
+    private LocalDateTime createTime;
+    
+    // 关联的优惠券ID（发放用户优惠券时使用，不落库）
+    private Long couponId;
+}
@@ -25,7 +25,7 @@ public class UserCoupon {
     private Long couponId;
     
     /**
-     * 状态 0-未使用 1-已使用 2-已过期
+     * 状态 1-未使用 2-已使用 3-已过期
      */
     private Integer status;
     
@@ -39,6 +39,11 @@ public class UserCoupon {
      */
     private Long orderId;
     
+    /**
+     * 发放键（秒杀发放为事件ID:序号，领取和批量发放为空字符串）
+     */
+    private String issueKey;
+    
     /**
      * 创建时间
      */
@@ -1,9 +1,13 @@
 package com.coffee.couponservice.mapper;
 
+import com.coffee.couponservice.dto.PageCursor;
 import com.coffee.couponservice.entity.Coupon;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -17,11 +21,26 @@ public interface CouponMapper {
      */
     Coupon selectById(@Param("id") Long id);
     
+    /**
+     * 根据ID批量查询优惠券
+     */
+    List<Coupon> selectByIds(@Param("ids") Collection<Long> ids);
+    
     /**
      * 查询所有可用的优惠券
      */
     List<Coupon> selectAvailableCoupons();
     
+    /**
+     * 查询下一张即将开始的优惠券的开始时间，没有时返回null
+     */
+    LocalDateTime selectNextStartTime();
+    
+    /**
+     * 查询结束时间在 [after, before) 内的优惠券ID，after为空时不限下界（过期清理使用）
+     */
+    List<Long> selectEndedIds(@Param("after") LocalDateTime after, @Param("before") LocalDateTime before);
+    
     /**
      * 更新优惠券使用数量
      */
@@ -32,6 +51,26 @@ public interface CouponMapper {
      */
     int updateUsedCountOptimistic(@Param("id") Long id);
     
+    /**
+     * 按增量累加使用数量（秒杀结果批量回写）
+     */
+    int incrementUsedCount(@Param("id") Long id, @Param("delta") Integer delta);
+    
+    /**
+     * 查询已累加过使用数量的秒杀事件ID（重放去重）
+     */
+    List<String> selectAppliedEventIds(@Param("eventIds") List<String> eventIds);
+    
+    /**
+     * 批量登记已累加使用数量的秒杀事件，与 incrementUsedCount 同一事务提交
+     */
+    int batchInsertAppliedEvents(@Param("couponId") Long couponId, @Param("eventIds") List<String> eventIds);
+    
+    /**
+     * 分批删除早于指定时间的事件登记
+     */
+    int deleteAppliedEventsBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+    
     /**
      * 插入优惠券
      */
@@ -49,8 +88,20 @@ public interface CouponMapper {
     
     /**
      * 分页查询优惠券（管理端）
+     * cursor不为空时按游标定位，否则按offset跳过
+     */
+    List<Coupon> selectCouponPage(
+            @Param("name") String name,
+            @Param("status") Integer status,
+            @Param("type") Integer type,
+            @Param("cursor") PageCursor cursor,
+            @Param("offset") Integer offset,
+            @Param("limit") Integer limit);
+    
+    /**
+     * 流式查询优惠券（管理端导出），需在事务内遍历
      */
-    List<Coupon> selectCouponList(
+    Cursor<Coupon> selectCouponCursor(
             @Param("name") String name,
             @Param("status") Integer status,
             @Param("type") Integer type);
@@ -1,8 +1,12 @@
 package com.coffee.couponservice.mapper;
 
+import com.coffee.couponservice.dto.PageCursor;
 import com.coffee.couponservice.entity.SeckillActivity;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -16,8 +20,12 @@ public interface SeckillActivityMapper {
     // 查询所有活动
     List<SeckillActivity> selectAll();
 
-    // 分页条件查询
-    List<SeckillActivity> selectSeckillList(@Param("name") String name, @Param("status") Integer status, @Param("couponId") Long couponId);
+    // 分页条件查询（cursor不为空时按游标定位，否则按offset跳过）
+    List<SeckillActivity> selectSeckillPage(@Param("name") String name, @Param("status") Integer status, @Param("couponId") Long couponId,
+                                            @Param("cursor") PageCursor cursor, @Param("offset") Integer offset, @Param("limit") Integer limit);
+
+    // 流式条件查询（导出使用，需在事务内遍历）
+    Cursor<SeckillActivity> selectSeckillCursor(@Param("name") String name, @Param("status") Integer status, @Param("couponId") Long couponId);
 
     // 统计满足条件的秒杀活动数量
     int countSeckills(@Param("name") String name, @Param("status") Integer status, @Param("couponId") Long couponId);
@@ -31,6 +39,12 @@ public interface SeckillActivityMapper {
     // 删除
     int deleteById(@Param("id") Long id);
 
+    // 查询在 before 之前开始、尚未结束的活动（库存预热使用）
+    List<SeckillActivity> selectUpcoming(@Param("before") LocalDateTime before, @Param("now") LocalDateTime now);
+
+    // 查询结束时间在 after 之后、已结束或已取消的活动（库存下线使用）
+    List<SeckillActivity> selectEnded(@Param("after") LocalDateTime after, @Param("now") LocalDateTime now);
+
     // 乐观锁/扣减库存（可根据业务再补充，例如）
     int updateStockForSeckill(@Param("id") Long id, @Param("stock") Integer stock);
 }
\ No newline at end of file
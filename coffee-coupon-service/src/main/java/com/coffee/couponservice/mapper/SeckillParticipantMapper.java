@@ -0,0 +1,29 @@
+package com.coffee.couponservice.mapper;
+
+import com.coffee.couponservice.entity.SeckillParticipant;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 秒杀参与记录Mapper接口
+ */
+@Mapper
+public interface SeckillParticipantMapper {
+    
+    /**
+     * 查询已落库的事件ID（重放去重）
+     */
+    List<String> selectExistingEventIds(@Param("eventIds") List<String> eventIds);
+    
+    /**
+     * 批量插入参与记录（多行INSERT，回填主键）
+     */
+    int batchInsert(@Param("list") List<SeckillParticipant> participants);
+    
+    /**
+     * 批量标记为已发放，并回填用户优惠券ID
+     */
+    int batchMarkIssued(@Param("list") List<SeckillParticipant> participants);
+}
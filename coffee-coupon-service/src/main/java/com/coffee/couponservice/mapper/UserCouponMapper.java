@@ -1,5 +1,6 @@
 package com.coffee.couponservice.mapper;
 
+import com.coffee.couponservice.dto.CouponCount;
 import com.coffee.couponservice.entity.UserCoupon;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
@@ -27,11 +28,40 @@ public interface UserCouponMapper {
      */
     List<UserCoupon> selectByUserId(@Param("userId") Long userId);
     
+    /**
+     * 根据用户ID和状态查询用户优惠券列表（状态为空时查询全部）
+     */
+    List<UserCoupon> selectByUserIdAndStatus(@Param("userId") Long userId, @Param("status") Integer status);
+    
+    /**
+     * 按优惠券统计已发放数量（对账使用）
+     */
+    List<CouponCount> countByCouponIds(@Param("couponIds") List<Long> couponIds);
+    
     /**
      * 插入用户优惠券
      */
     int insert(UserCoupon userCoupon);
     
+    /**
+     * 批量插入用户优惠券（多行INSERT，回填主键）
+     */
+    int batchInsert(@Param("list") List<UserCoupon> userCoupons);
+    
+    /**
+     * 批量插入用户优惠券，发放键已存在的行跳过（重放幂等，不回填主键）
+     * @return 实际插入行数
+     */
+    int batchInsertIgnore(@Param("list") List<UserCoupon> userCoupons);
+    
+    /**
+     * 批量插入同一优惠券的用户优惠券，已领取过的用户由唯一键跳过（并发写入和重放幂等）
+     * @return 实际插入行数
+     */
+    int batchInsertIfAbsent(@Param("couponId") Long couponId,
+                            @Param("userIds") List<Long> userIds,
+                            @Param("status") Integer status);
+    
     /**
      * 更新用户优惠券状态
      */
@@ -41,4 +71,29 @@ public interface UserCouponMapper {
      * 根据用户ID和优惠券ID删除
      */
     int deleteByUserIdAndCouponId(@Param("userId") Long userId, @Param("couponId") Long couponId);
+    
+    /**
+     * 按优惠券和状态分块查询用户优惠券ID（过期清理使用）
+     */
+    List<Long> selectIdsByCouponIdAndStatus(@Param("couponId") Long couponId,
+                                            @Param("statuses") List<Integer> statuses,
+                                            @Param("limit") Integer limit);
+    
+    /**
+     * 按ID批量变更状态，仅变更仍处于fromStatus的记录
+     * @return 实际变更行数
+     */
+    int batchUpdateStatus(@Param("ids") List<Long> ids,
+                          @Param("fromStatus") Integer fromStatus,
+                          @Param("toStatus") Integer toStatus);
+    
+    /**
+     * 按ID复制到历史表
+     */
+    int archiveByIds(@Param("ids") List<Long> ids);
+    
+    /**
+     * 按ID批量删除
+     */
+    int deleteByIds(@Param("ids") List<Long> ids);
 }
@@ -1,17 +1,12 @@
 package com.coffee.couponservice.service;
 
-import com.coffee.couponservice.vo.PublicCouponVO;
-
-import java.util.List;
+import com.coffee.couponservice.dto.AvailableCouponsPayload;
 
 public interface CouponQueryService {
-    List<PublicCouponVO> listAvailableCoupons();
+    
+    /**
+     * 可领取优惠券列表（快照 + Redis实时库存）
+     * @param ifNoneMatch 客户端携带的ETag，与当前内容一致时不生成响应体
+     */
+    AvailableCouponsPayload renderAvailableCoupons(String ifNoneMatch);
 }
-
-
-
-
-
-
-
-
@@ -3,6 +3,9 @@ package com.coffee.couponservice.service;
 import com.coffee.common.result.Result;
 import com.coffee.couponservice.dto.SeckillRequest;
 import com.coffee.couponservice.dto.SeckillResult;
+import com.coffee.couponservice.entity.SeckillActivity;
+
+import java.util.List;
 
 /**
  * 优惠券秒杀服务接口
@@ -14,11 +17,32 @@ public interface CouponSeckillService {
      */
     Result<SeckillResult> seckillCoupon(SeckillRequest request);
     
+    /**
+     * 批量秒杀（供异步入口队列使用），返回结果与请求一一对应
+     * 同一优惠券的请求通过一次Lua脚本调用完成
+     */
+    List<SeckillResult> seckillBatch(List<SeckillRequest> requests);
+    
     /**
      * 初始化秒杀库存到Redis
      */
     void initSeckillStock(Long couponId, Integer stock);
     
+    /**
+     * 秒杀活动信息（时间窗口、每人限购）和活动库存写入Redis
+     */
+    void initSeckillActivity(SeckillActivity activity);
+    
+    /**
+     * 秒杀开始前预热：Lua脚本载入Redis脚本缓存，售罄标记按活动当前库存就绪
+     */
+    void warmUpSeckill(SeckillActivity activity);
+    
+    /**
+     * 秒杀结束后下线活动：删除活动信息和库存并广播售罄，每人已抢数量保留一段时间供对账
+     */
+    void clearSeckillActivity(SeckillActivity activity);
+    
     /**
      * 获取秒杀库存
      */
@@ -1,8 +1,10 @@
 package com.coffee.couponservice.service;
 
+import com.coffee.couponservice.dto.PageCursor;
 import com.coffee.couponservice.entity.Coupon;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 优惠券服务接口
@@ -10,20 +12,41 @@ import java.util.List;
 public interface CouponService {
     
     /**
-     * 查询优惠券列表
+     * 分页查询优惠券列表
+     * cursor不为空时按游标取下一页，否则按页码跳过（回退方式）
      */
-    List<Coupon> getCouponList(String name, Integer status, Integer type);
+    List<Coupon> getCouponPage(String name, Integer status, Integer type, PageCursor cursor, Integer page, Integer pageSize);
     
     /**
-     * 统计优惠券总数
+     * 统计优惠券总数（按筛选条件缓存）
      */
     long countCoupons(String name, Integer status, Integer type);
     
     /**
-     * 根据ID查询优惠券
+     * 流式遍历满足条件的优惠券（导出使用）
+     */
+    void exportCoupons(String name, Integer status, Integer type, Consumer<Coupon> consumer);
+    
+    /**
+     * 根据ID查询优惠券（直接查询数据库）
      */
     Coupon getCouponById(Long id);
     
+    /**
+     * 创建优惠券
+     */
+    void createCoupon(Coupon coupon);
+    
+    /**
+     * 更新优惠券
+     */
+    void updateCoupon(Coupon coupon);
+    
+    /**
+     * 删除优惠券
+     */
+    void deleteCoupon(Long id);
+    
     /**
      * 更新优惠券使用数量
      */
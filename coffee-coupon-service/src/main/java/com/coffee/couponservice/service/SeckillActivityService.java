@@ -0,0 +1,34 @@
+package com.coffee.couponservice.service;
+
+import com.coffee.couponservice.dto.PageCursor;
+import com.coffee.couponservice.entity.SeckillActivity;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 秒杀活动管理服务接口
+ */
+public interface SeckillActivityService {
+    
+    /**
+     * 分页查询秒杀活动
+     * cursor不为空时按游标取下一页，否则按页码跳过（回退方式）
+     */
+    List<SeckillActivity> getSeckillPage(String name, Integer status, Long couponId, PageCursor cursor, Integer page, Integer pageSize);
+    
+    /**
+     * 统计秒杀活动总数（按筛选条件缓存）
+     */
+    long countSeckills(String name, Integer status, Long couponId);
+    
+    /**
+     * 流式遍历满足条件的秒杀活动（导出使用）
+     */
+    void exportSeckills(String name, Integer status, Long couponId, Consumer<SeckillActivity> consumer);
+    
+    /**
+     * 创建秒杀活动
+     */
+    void createSeckill(SeckillActivity activity);
+}
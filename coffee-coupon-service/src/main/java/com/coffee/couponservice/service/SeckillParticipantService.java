@@ -0,0 +1,19 @@
+package com.coffee.couponservice.service;
+
+import com.coffee.couponservice.entity.SeckillParticipant;
+
+import java.util.List;
+
+/**
+ * 秒杀参与记录服务接口
+ */
+public interface SeckillParticipantService {
+    
+    /**
+     * 批量保存秒杀参与记录并发放用户优惠券
+     * 已落库的事件（按事件ID判断）会被跳过，重放安全；
+     * 未携带活动ID的事件（按优惠券秒杀）只发放用户优惠券，不保存参与记录
+     * @return 本次新保存的参与记录数
+     */
+    int saveAndIssue(List<SeckillParticipant> participants);
+}
@@ -1,56 +1,102 @@
 package com.coffee.couponservice.service.impl;
 
-import com.coffee.couponservice.entity.Coupon;
-import com.coffee.couponservice.mapper.CouponMapper;
+import com.coffee.couponservice.component.AvailableCouponSnapshot;
+import com.coffee.couponservice.dto.AvailableCouponsPayload;
 import com.coffee.couponservice.service.CouponQueryService;
-import com.coffee.couponservice.vo.PublicCouponVO;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.CRC32;
 
+@Slf4j
 @Service
 public class CouponQueryServiceImpl implements CouponQueryService {
 
+    private static final String STOCK_KEY_PREFIX = "coupon:stock:";
+
+    // 与 Result.success(list) 序列化结果一致的外层结构
+    private static final byte[] BODY_PREFIX =
+            "{\"code\":200,\"message\":\"操作成功\",\"data\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BODY_SUFFIX = "],\"success\":true}".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private AvailableCouponSnapshot availableCouponSnapshot;
+
     @Autowired
-    private CouponMapper couponMapper;
+    private StringRedisTemplate stringRedisTemplate;
 
     @Override
-    public List<PublicCouponVO> listAvailableCoupons() {
-        List<Coupon> list = couponMapper.selectAvailableCoupons();
-        List<PublicCouponVO> result = new ArrayList<>();
-        for (Coupon c : list) {
-            PublicCouponVO vo = new PublicCouponVO();
-            vo.setId(c.getId());
-            vo.setTitle(c.getName());
-            vo.setName(c.getName());
-            vo.setDiscountAmount(BigDecimal.valueOf(c.getDiscountValue()));
-            vo.setAmount(BigDecimal.valueOf(c.getDiscountValue()));
-            vo.setThreshold(BigDecimal.valueOf(c.getMinAmount()));
-            vo.setMinAmount(BigDecimal.valueOf(c.getMinAmount()));
-            vo.setType(c.getType());
-            vo.setStartTime(c.getStartTime());
-            vo.setExpireTime(c.getEndTime());
-            vo.setEndTime(c.getEndTime());
-            
-            // 暂时使用数据库库存，避免Redis连接问题
-            Integer total = c.getTotalCount() == null ? 0 : c.getTotalCount();
-            Integer used = c.getUsedCount() == null ? 0 : c.getUsedCount();
-            int left = Math.max(0, total - used);
-            
-            vo.setTotal(total);
-            vo.setUsed(used);
-            
-            vo.setStock(left);
-            vo.setRemain(left);
-            vo.setRemainCount(left);
-            vo.setLeft(left);
-            vo.setLeftCount(left);
-            vo.setStatus(c.getStatus());
-            result.add(vo);
+    public AvailableCouponsPayload renderAvailableCoupons(String ifNoneMatch) {
+        AvailableCouponSnapshot.Snapshot snapshot = availableCouponSnapshot.get();
+        List<AvailableCouponSnapshot.Entry> entries = snapshot.getEntries();
+        int[] stocks = loadStocks(entries);
+
+        // ETag = 静态内容摘要 + 剩余库存摘要
+        CRC32 crc = new CRC32();
+        for (int stock : stocks) {
+            crc.update(stock >>> 24);
+            crc.update(stock >>> 16);
+            crc.update(stock >>> 8);
+            crc.update(stock);
+        }
+        AvailableCouponsPayload payload = new AvailableCouponsPayload();
+        payload.setEtag("\"" + Long.toHexString(snapshot.getStaticHash()) + "-" + Long.toHexString(crc.getValue()) + "\"");
+        if (payload.getEtag().equals(ifNoneMatch)) {
+            return payload;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 + entries.size() * 512);
+        out.writeBytes(BODY_PREFIX);
+        for (int i = 0; i < entries.size(); i++) {
+            AvailableCouponSnapshot.Entry entry = entries.get(i);
+            int left = stocks[i];
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(entry.getHead());
+            String tail = ",\"used\":" + (entry.getTotal() - left)
+                    + ",\"stock\":" + left
+                    + ",\"remain\":" + left
+                    + ",\"remainCount\":" + left
+                    + ",\"left\":" + left
+                    + ",\"leftCount\":" + left + "}";
+            out.writeBytes(tail.getBytes(StandardCharsets.US_ASCII));
+        }
+        out.writeBytes(BODY_SUFFIX);
+        payload.setBody(out.toByteArray());
+        return payload;
+    }
+
+    /**
+     * 一次MGET读取所有优惠券的领券库存，Redis未初始化或不可用时使用快照中的数据库库存
+     */
+    private int[] loadStocks(List<AvailableCouponSnapshot.Entry> entries) {
+        int[] stocks = new int[entries.size()];
+        List<String> keys = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            stocks[i] = entries.get(i).getFallbackStock();
+            keys.add(STOCK_KEY_PREFIX + entries.get(i).getCouponId());
+        }
+        if (keys.isEmpty()) {
+            return stocks;
+        }
+        try {
+            List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; values != null && i < values.size(); i++) {
+                if (values.get(i) != null) {
+                    int total = entries.get(i).getTotal();
+                    stocks[i] = (int) Math.min(total, Math.max(0, Long.parseLong(values.get(i))));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取优惠券实时库存失败，使用快照库存: {}", e.getMessage());
         }
-        return result;
+        return stocks;
     }
 }
@@ -1,49 +1,125 @@
 package com.coffee.couponservice.service.impl;
 
 import com.coffee.common.result.Result;
+import com.coffee.couponservice.component.CouponUsedCountWriteBehind;
+import com.coffee.couponservice.component.ParticipantTracker;
+import com.coffee.couponservice.component.SeckillSoldOutRegistry;
+import com.coffee.couponservice.component.SeckillStockLease;
 import com.coffee.couponservice.dto.SeckillRequest;
 import com.coffee.couponservice.dto.SeckillResult;
-import com.coffee.couponservice.entity.Coupon;
-import com.coffee.couponservice.mapper.CouponMapper;
+import com.coffee.couponservice.entity.SeckillActivity;
 import com.coffee.couponservice.service.CouponSeckillService;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
 
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 优惠券秒杀服务实现类
  * 使用Redis + Lua脚本 + Redisson分布式锁防止超卖
+ * 
+ * 秒杀模式（coupon.seckill.mode）：
+ * 1. lock：预检查 + Redisson分布式锁 + Lua脚本（默认）
+ * 2. lockfree：仅执行一次Lua脚本（EVALSHA），由脚本完成去重、扣库存和请求令牌幂等
+ * 3. lease：节点批量租借库存后在本地发放，Redis只负责去重（管道批量执行）
+ * 
+ * 携带活动ID的请求按活动秒杀：活动信息由预热任务写入Redis，
+ * 时间窗口、每人限购（HINCRBY计数）和库存都在一次Lua脚本内校验，不查数据库。
  */
 @Slf4j
 @Service
 public class CouponSeckillServiceImpl implements CouponSeckillService {
     
+    /**
+     * 秒杀模式：分布式锁
+     */
+    public static final String MODE_LOCK = "lock";
+    
+    /**
+     * 秒杀模式：无锁（Lua脚本为唯一协调点）
+     */
+    public static final String MODE_LOCK_FREE = "lockfree";
+    
+    /**
+     * 秒杀模式：库存租约
+     */
+    public static final String MODE_LEASE = "lease";
+    
+    // 秒杀脚本返回值
+    private static final long SECKILL_SOLD_OUT = 0L;
+    private static final long SECKILL_SUCCESS = 1L;
+    private static final long SECKILL_REPEATED = 2L;
+    private static final long SECKILL_NOT_STARTED = 3L;
+    private static final long SECKILL_ENDED = 4L;
+    private static final long SECKILL_NO_ACTIVITY = 5L;
+    private static final long SECKILL_REPLAYED = 6L;
+    private static final long SECKILL_NO_STOCK_KEY = 7L;
+    private static final long SECKILL_INSUFFICIENT = 8L;
+    
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
     
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    
     @Autowired
     private RedissonClient redissonClient;
 
     @Autowired
-    private RabbitTemplate rabbitTemplate;
+    private SeckillSoldOutRegistry soldOutRegistry;
     
     @Autowired
-    private CouponMapper couponMapper;
+    private SeckillStockLease stockLease;
+    
+    @Value("${coupon.seckill.mode:lock}")
+    private String seckillMode;
+    
+    @Value("${coupon.seckill.token-ttl-seconds:300}")
+    private long tokenTtlSeconds;
+    
+    @Value("${coupon.seckill.participant-tracker:SET}")
+    private ParticipantTracker participantTracker;
     
     // Lua脚本：原子性扣减库存
     private DefaultRedisScript<Long> seckillScript;
     
+    // Lua脚本：无锁秒杀（去重 + 扣库存 + 请求令牌幂等）
+    private DefaultRedisScript<Long> lockFreeSeckillScript;
+    
+    // Lua脚本：租约模式下的用户去重
+    private DefaultRedisScript<Long> leaseClaimScript;
+    
+    // Lua脚本：批量秒杀（同一优惠券的多个请求一次调用完成）
+    private DefaultRedisScript<List> batchSeckillScript;
+    
+    // Lua脚本：按活动秒杀（时间窗口 + 每人限购 + 库存）
+    private DefaultRedisScript<Long> activitySeckillScript;
+    
     public CouponSeckillServiceImpl() {
         // 初始化Lua脚本
         seckillScript = new DefaultRedisScript<>();
@@ -58,10 +134,40 @@ public class CouponSeckillServiceImpl implements CouponSeckillService {
             // 使用内联脚本作为备用
             seckillScript.setScriptText(getInlineSeckillScript());
         }
+        
+        lockFreeSeckillScript = new DefaultRedisScript<>();
+        lockFreeSeckillScript.setResultType(Long.class);
+        lockFreeSeckillScript.setLocation(new ClassPathResource("lua/seckill_lockfree.lua"));
+        
+        leaseClaimScript = new DefaultRedisScript<>();
+        leaseClaimScript.setResultType(Long.class);
+        leaseClaimScript.setLocation(new ClassPathResource("lua/seckill_lease_claim.lua"));
+        
+        batchSeckillScript = new DefaultRedisScript<>();
+        batchSeckillScript.setResultType(List.class);
+        batchSeckillScript.setLocation(new ClassPathResource("lua/seckill_batch.lua"));
+        
+        activitySeckillScript = new DefaultRedisScript<>();
+        activitySeckillScript.setResultType(Long.class);
+        activitySeckillScript.setLocation(new ClassPathResource("lua/seckill_activity.lua"));
     }
     
     @Override
     public Result<SeckillResult> seckillCoupon(SeckillRequest request) {
+        if (request.getActivityId() != null) {
+            return seckillActivity(request);
+        }
+        
+        if (MODE_LEASE.equalsIgnoreCase(seckillMode)) {
+            SeckillResult seckillResult = seckillBatchLeased(Collections.singletonList(request)).get(0);
+            return Boolean.TRUE.equals(seckillResult.getSuccess())
+                    ? Result.success(seckillResult.getMessage(), seckillResult)
+                    : Result.error(seckillResult.getMessage());
+        }
+        if (MODE_LOCK_FREE.equalsIgnoreCase(seckillMode)) {
+            return seckillCouponLockFree(request);
+        }
+        
         Long userId = request.getUserId();
         Long couponId = request.getCouponId();
         
@@ -80,38 +186,31 @@ public class CouponSeckillServiceImpl implements CouponSeckillService {
             // 尝试获取锁，最多等待1秒，锁定时间10秒
             if (lock.tryLock(1, 10, TimeUnit.SECONDS)) {
                 // 3. 使用Lua脚本原子性扣减库存
-                String stockKey = "seckill:stock:" + couponId;
-                String userKey = "seckill:user:" + couponId;
-                
-                Long result = redisTemplate.execute(seckillScript, 
-                    Arrays.asList(stockKey, userKey), 
+                Long result = stringRedisTemplate.execute(seckillScript, 
+                    Arrays.asList(stockKey(couponId), participantTracker.key(userKey(couponId)),
+                            CouponUsedCountWriteBehind.STREAM_KEY), 
                     userId.toString(), 
-                    System.currentTimeMillis());
+                    participantTracker.scriptArg(),
+                    couponId.toString());
                 
-                if (result != null && result == 1) {
+                if (result != null && result == SECKILL_SUCCESS) {
                     // 秒杀成功
                     log.info("用户 {} 秒杀优惠券 {} 成功", userId, couponId);
-                    
-                    SeckillResult seckillResult = new SeckillResult();
-                    seckillResult.setSuccess(true);
-                    seckillResult.setCouponId(couponId);
-                    seckillResult.setUserId(userId);
-                    seckillResult.setMessage("秒杀成功");
-                    
-                    // 同步更新数据库库存
-                    syncDatabaseStock(couponId);
-                    
-                    // 异步处理后续业务逻辑（发送MQ消息）
-                    rabbitTemplate.convertAndSend("order.create.queue", seckillResult);
-                    // 这里可以发送消息到RabbitMQ进行异步处理
-                    return Result.success("秒杀成功", seckillResult);
-
-                    
-
+                    return Result.success("秒杀成功", onSeckillSuccess(userId, couponId));
+                } else if (result != null && result == SECKILL_REPEATED) {
+                    log.info("用户 {} 秒杀优惠券 {} 失败，已参与", userId, couponId);
+                    return Result.error("您已经参与过该优惠券的秒杀活动");
+                } else if (result != null && result == SECKILL_NO_STOCK_KEY) {
+                    // 库存未初始化或已下线，不是售罄，不打售罄标记
+                    log.info("用户 {} 秒杀优惠券 {} 失败，秒杀库存不存在", userId, couponId);
+                    return Result.error("秒杀失败，库存不足");
                 } else {
-                    // 秒杀失败
-                    log.info("用户 {} 秒杀优惠券 {} 失败，库存不足或已参与", userId, couponId);
-                    return Result.error("秒杀失败，库存不足或您已参与过该活动");
+                    // 库存不足，本地打标并广播，后续请求在控制器直接拦截
+                    log.info("用户 {} 秒杀优惠券 {} 失败，库存不足", userId, couponId);
+                    if (result != null && result == SECKILL_SOLD_OUT) {
+                        soldOutRegistry.markSoldOut(couponId);
+                    }
+                    return Result.error("秒杀失败，库存不足");
                 }
             } else {
                 return Result.error("系统繁忙，请稍后重试");
@@ -131,24 +230,514 @@ public class CouponSeckillServiceImpl implements CouponSeckillService {
         }
     }
     
+    /**
+     * 按活动秒杀，一次Lua脚本调用完成全部校验和扣减
+     */
+    private Result<SeckillResult> seckillActivity(SeckillRequest request) {
+        try {
+            Long result = stringRedisTemplate.execute(activitySeckillScript,
+                    activityKeys(request), activityArgs(request).toArray());
+            SeckillResult seckillResult = handleActivityResult(request, result);
+            return Boolean.TRUE.equals(seckillResult.getSuccess())
+                    ? Result.success(seckillResult.getMessage(), seckillResult)
+                    : Result.error(seckillResult.getMessage());
+        } catch (Exception e) {
+            log.error("活动秒杀过程中发生异常", e);
+            return Result.error("系统异常，请稍后重试");
+        }
+    }
+    
+    /**
+     * 无锁秒杀
+     * 不做预检查、不加分布式锁，每个请求只执行一次Lua脚本
+     */
+    private Result<SeckillResult> seckillCouponLockFree(SeckillRequest request) {
+        try {
+            Long result = stringRedisTemplate.execute(lockFreeSeckillScript,
+                    lockFreeKeys(request),
+                    request.getUserId().toString(),
+                    String.valueOf(tokenTtlSeconds),
+                    participantTracker.scriptArg(),
+                    request.getCouponId().toString());
+            
+            SeckillResult seckillResult = handleLockFreeResult(request, result);
+            return Boolean.TRUE.equals(seckillResult.getSuccess())
+                    ? Result.success(seckillResult.getMessage(), seckillResult)
+                    : Result.error(seckillResult.getMessage());
+        } catch (Exception e) {
+            log.error("无锁秒杀过程中发生异常", e);
+            return Result.error("系统异常，请稍后重试");
+        }
+    }
+    
+    /**
+     * 批量秒杀
+     * 按优惠券分组，每组通过一次批量Lua脚本调用完成去重和扣库存，
+     * 各组的脚本调用再通过一次管道发送
+     */
+    @Override
+    public List<SeckillResult> seckillBatch(List<SeckillRequest> requests) {
+        // 携带活动ID的请求单独处理
+        List<Integer> activityIndexes = new ArrayList<>();
+        List<Integer> couponIndexes = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            (requests.get(i).getActivityId() != null ? activityIndexes : couponIndexes).add(i);
+        }
+        if (activityIndexes.isEmpty()) {
+            return seckillCouponBatch(requests);
+        }
+        
+        List<SeckillResult> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        List<SeckillResult> activityResults = seckillActivityBatch(pick(requests, activityIndexes));
+        for (int i = 0; i < activityIndexes.size(); i++) {
+            results.set(activityIndexes.get(i), activityResults.get(i));
+        }
+        if (!couponIndexes.isEmpty()) {
+            List<SeckillResult> couponResults = seckillCouponBatch(pick(requests, couponIndexes));
+            for (int i = 0; i < couponIndexes.size(); i++) {
+                results.set(couponIndexes.get(i), couponResults.get(i));
+            }
+        }
+        return results;
+    }
+    
+    private static List<SeckillRequest> pick(List<SeckillRequest> requests, List<Integer> indexes) {
+        List<SeckillRequest> picked = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            picked.add(requests.get(index));
+        }
+        return picked;
+    }
+    
+    /**
+     * 按活动批量秒杀，每个请求一次脚本调用，整批通过一次管道发送
+     */
+    private List<SeckillResult> seckillActivityBatch(List<SeckillRequest> requests) {
+        List<List<String>> keysList = new ArrayList<>(requests.size());
+        List<List<String>> argsList = new ArrayList<>(requests.size());
+        for (SeckillRequest request : requests) {
+            keysList.add(activityKeys(request));
+            argsList.add(activityArgs(request));
+        }
+        List<Object> rawResults = evalShaPipelined(activitySeckillScript, ReturnType.INTEGER, keysList, argsList);
+        
+        List<SeckillResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            results.add(handleActivityResult(requests.get(i), (Long) rawResults.get(i)));
+        }
+        return results;
+    }
+    
+    /**
+     * 按优惠券批量秒杀
+     */
+    private List<SeckillResult> seckillCouponBatch(List<SeckillRequest> requests) {
+        if (MODE_LEASE.equalsIgnoreCase(seckillMode)) {
+            return seckillBatchLeased(requests);
+        }
+        
+        Map<Long, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            groups.computeIfAbsent(requests.get(i).getCouponId(), k -> new ArrayList<>()).add(i);
+        }
+        
+        String ttl = String.valueOf(tokenTtlSeconds);
+        List<List<String>> keysList = new ArrayList<>(groups.size());
+        List<List<String>> argsList = new ArrayList<>(groups.size());
+        for (List<Integer> indexes : groups.values()) {
+            int first = indexes.get(0);
+            List<String> groupKeys = lockFreeKeys(requests.get(first));
+            List<String> keys = new ArrayList<>(indexes.size() + 3);
+            List<String> args = new ArrayList<>(indexes.size() + 3);
+            keys.add(groupKeys.get(0));
+            keys.add(groupKeys.get(1));
+            keys.add(groupKeys.get(3));
+            args.add(ttl);
+            args.add(participantTracker.scriptArg());
+            args.add(requests.get(first).getCouponId().toString());
+            for (int index : indexes) {
+                SeckillRequest request = requests.get(index);
+                keys.add(lockFreeKeys(request).get(2));
+                args.add(request.getUserId().toString());
+            }
+            keysList.add(keys);
+            argsList.add(args);
+        }
+        List<Object> rawResults = evalShaPipelined(batchSeckillScript, ReturnType.MULTI, keysList, argsList);
+        
+        List<SeckillResult> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        int group = 0;
+        for (List<Integer> indexes : groups.values()) {
+            List<?> groupResults = (List<?>) rawResults.get(group++);
+            for (int j = 0; j < indexes.size(); j++) {
+                int index = indexes.get(j);
+                SeckillRequest request = requests.get(index);
+                results.set(index, handleLockFreeResult(request, (Long) groupResults.get(j)));
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 租约模式批量秒杀
+     * 先从本地租约取库存，拿到库存的请求再通过一次管道到Redis去重
+     */
+    private List<SeckillResult> seckillBatchLeased(List<SeckillRequest> requests) {
+        List<SeckillResult> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        List<SeckillRequest> admitted = new ArrayList<>();
+        List<Integer> admittedIndexes = new ArrayList<>();
+        List<List<String>> keysList = new ArrayList<>();
+        List<List<String>> argsList = new ArrayList<>();
+        String ttl = String.valueOf(tokenTtlSeconds);
+        
+        for (int i = 0; i < requests.size(); i++) {
+            SeckillRequest request = requests.get(i);
+            Long couponId = request.getCouponId();
+            if (stockLease.tryAcquire(couponId)) {
+                List<String> keys = lockFreeKeys(request);
+                admitted.add(request);
+                admittedIndexes.add(i);
+                keysList.add(keys.subList(1, 4));
+                argsList.add(Arrays.asList(request.getUserId().toString(), ttl, participantTracker.scriptArg(),
+                        couponId.toString()));
+            } else {
+                // 其他节点可能仍持有租约，只在本节点打标
+                soldOutRegistry.markSoldOutLocally(couponId);
+                results.set(i, failedResult(request, "秒杀失败，库存不足"));
+            }
+        }
+        
+        if (!admitted.isEmpty()) {
+            List<Object> rawResults;
+            try {
+                rawResults = evalShaPipelined(leaseClaimScript, ReturnType.INTEGER, keysList, argsList);
+            } catch (RuntimeException e) {
+                // 去重失败时库存还给本地租约
+                admitted.forEach(request -> stockLease.release(request.getCouponId()));
+                throw e;
+            }
+            for (int i = 0; i < admitted.size(); i++) {
+                SeckillRequest request = admitted.get(i);
+                Long result = (Long) rawResults.get(i);
+                SeckillResult seckillResult;
+                if (result != null && result == SECKILL_SUCCESS) {
+                    log.info("用户 {} 租约秒杀优惠券 {} 成功", request.getUserId(), request.getCouponId());
+                    seckillResult = onSeckillSuccess(request.getUserId(), request.getCouponId());
+                } else if (result != null && result == SECKILL_REPLAYED) {
+                    // 重复提交未占用库存，租约归还
+                    stockLease.release(request.getCouponId());
+                    seckillResult = replayedResult(request);
+                } else {
+                    stockLease.release(request.getCouponId());
+                    seckillResult = failedResult(request, "您已经参与过该优惠券的秒杀活动");
+                }
+                results.set(admittedIndexes.get(i), seckillResult);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 通过Redis管道批量执行脚本（EVALSHA），keysList与argsList一一对应
+     * Redis重启等原因导致脚本缓存丢失时，重新加载后重试一次；请求令牌保证重试幂等
+     */
+    private List<Object> evalShaPipelined(DefaultRedisScript<?> script,
+                                          ReturnType returnType,
+                                          List<List<String>> keysList,
+                                          List<List<String>> argsList) {
+        try {
+            return executeScriptPipelined(script, returnType, keysList, argsList);
+        } catch (RedisPipelineException e) {
+            log.warn("管道执行秒杀脚本失败，重新加载脚本后重试: {}", e.getMessage());
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.scriptLoad(
+                    script.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+            return executeScriptPipelined(script, returnType, keysList, argsList);
+        }
+    }
+    
+    private List<Object> executeScriptPipelined(DefaultRedisScript<?> script,
+                                                ReturnType returnType,
+                                                List<List<String>> keysList,
+                                                List<List<String>> argsList) {
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keysList.size(); i++) {
+                List<String> keys = keysList.get(i);
+                List<String> args = argsList.get(i);
+                byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+                for (int k = 0; k < keys.size(); k++) {
+                    keysAndArgs[k] = keys.get(k).getBytes(StandardCharsets.UTF_8);
+                }
+                for (int k = 0; k < args.size(); k++) {
+                    keysAndArgs[keys.size() + k] = args.get(k).getBytes(StandardCharsets.UTF_8);
+                }
+                connection.evalSha(script.getSha1(), returnType, keys.size(), keysAndArgs);
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * 无锁秒杀脚本的键：库存键、用户集合键、请求令牌键、中奖事件流
+     * 未携带请求令牌时退化为按用户幂等
+     */
+    private List<String> lockFreeKeys(SeckillRequest request) {
+        Long couponId = request.getCouponId();
+        return Arrays.asList(
+                stockKey(couponId),
+                participantTracker.key(userKey(couponId)),
+                tokenKey(couponId, request.getUserId(), request.getRequestToken()),
+                CouponUsedCountWriteBehind.STREAM_KEY);
+    }
+    
+    private static String stockKey(Long couponId) {
+        return "seckill:stock:" + couponId;
+    }
+    
+    private static String userKey(Long couponId) {
+        return "seckill:user:" + couponId;
+    }
+    
+    /**
+     * 请求令牌键，按用户隔离，其他用户重放同一令牌不会命中
+     */
+    private static String tokenKey(Long couponId, Long userId, String token) {
+        return "seckill:token:" + couponId + ":"
+                + (StringUtils.hasText(token) ? userId + ":" + token : userId.toString());
+    }
+    
+    /**
+     * 活动秒杀脚本的键：活动信息、活动库存、每人已抢数量、请求令牌（按用户隔离）、中奖事件流
+     * 中奖事件流为全局共享，与活动的键不在同一集群slot，脚本按单节点Redis部署使用
+     */
+    private static List<String> activityKeys(SeckillRequest request) {
+        Long activityId = request.getActivityId();
+        // 每人可抢多件时不能用用户ID作为默认令牌，否则第二次购买会被当作重试
+        String token = StringUtils.hasText(request.getRequestToken())
+                ? request.getRequestToken() : UUID.randomUUID().toString();
+        return Arrays.asList(
+                activityKey(activityId),
+                activityStockKey(activityId),
+                activityCountKey(activityId),
+                activityKey(activityId) + ":token:" + request.getUserId() + ":" + token,
+                CouponUsedCountWriteBehind.STREAM_KEY);
+    }
+    
+    private List<String> activityArgs(SeckillRequest request) {
+        return Arrays.asList(
+                request.getUserId().toString(),
+                request.getCouponId().toString(),
+                String.valueOf(quantityOf(request)),
+                String.valueOf(tokenTtlSeconds),
+                request.getActivityId().toString());
+    }
+    
+    private static int quantityOf(SeckillRequest request) {
+        return request.getQuantity() != null && request.getQuantity() > 0 ? request.getQuantity() : 1;
+    }
+    
+    private static String activityKey(Long activityId) {
+        return "seckill:activity:{" + activityId + "}";
+    }
+    
+    private static String activityStockKey(Long activityId) {
+        return activityKey(activityId) + ":stock";
+    }
+    
+    private static String activityCountKey(Long activityId) {
+        return activityKey(activityId) + ":count";
+    }
+    
+    /**
+     * 处理活动秒杀脚本返回值
+     */
+    private SeckillResult handleActivityResult(SeckillRequest request, Long result) {
+        Long userId = request.getUserId();
+        Long activityId = request.getActivityId();
+        
+        if (result != null && result == SECKILL_SUCCESS) {
+            log.info("用户 {} 秒杀活动 {} 成功，数量 {}", userId, activityId, quantityOf(request));
+            return onSeckillSuccess(activityId, userId, request.getCouponId(), quantityOf(request));
+        }
+        if (result != null && result == SECKILL_REPLAYED) {
+            return replayedResult(request);
+        }
+        if (result != null && result == SECKILL_REPEATED) {
+            return failedResult(request, "超过每人限购数量");
+        }
+        if (result != null && result == SECKILL_NOT_STARTED) {
+            return failedResult(request, "秒杀活动尚未开始");
+        }
+        if (result != null && result == SECKILL_ENDED) {
+            return failedResult(request, "秒杀活动已结束");
+        }
+        if (result != null && result == SECKILL_NO_ACTIVITY) {
+            return failedResult(request, "秒杀活动不存在");
+        }
+        if (result != null && result == SECKILL_INSUFFICIENT) {
+            // 仍有库存，只是不够本次数量，不打售罄标记
+            return failedResult(request, "秒杀失败，剩余库存不足本次购买数量");
+        }
+        log.info("用户 {} 秒杀活动 {} 失败，库存不足", userId, activityId);
+        if (result != null && result == SECKILL_SOLD_OUT) {
+            soldOutRegistry.markActivitySoldOut(activityId);
+        }
+        return failedResult(request, "秒杀失败，库存不足");
+    }
+    
+    /**
+     * 处理无锁秒杀脚本返回值
+     */
+    private SeckillResult handleLockFreeResult(SeckillRequest request, Long result) {
+        Long userId = request.getUserId();
+        Long couponId = request.getCouponId();
+        
+        if (result != null && result == SECKILL_SUCCESS) {
+            log.info("用户 {} 无锁秒杀优惠券 {} 成功", userId, couponId);
+            return onSeckillSuccess(userId, couponId);
+        }
+        if (result != null && result == SECKILL_REPLAYED) {
+            return replayedResult(request);
+        }
+        
+        if (result != null && result == SECKILL_REPEATED) {
+            return failedResult(request, "您已经参与过该优惠券的秒杀活动");
+        }
+        if (result != null && result == SECKILL_NO_STOCK_KEY) {
+            // 库存未初始化或已下线，不是售罄，不打售罄标记
+            log.info("用户 {} 无锁秒杀优惠券 {} 失败，秒杀库存不存在", userId, couponId);
+            return failedResult(request, "秒杀失败，库存不足");
+        }
+        log.info("用户 {} 无锁秒杀优惠券 {} 失败，库存不足", userId, couponId);
+        if (result != null && result == SECKILL_SOLD_OUT) {
+            soldOutRegistry.markSoldOut(couponId);
+        }
+        return failedResult(request, "秒杀失败，库存不足");
+    }
+    
+    private SeckillResult failedResult(SeckillRequest request, String message) {
+        SeckillResult seckillResult = new SeckillResult();
+        seckillResult.setSuccess(false);
+        seckillResult.setCouponId(request.getCouponId());
+        seckillResult.setActivityId(request.getActivityId());
+        seckillResult.setUserId(request.getUserId());
+        seckillResult.setMessage(message);
+        return seckillResult;
+    }
+    
+    /**
+     * 同一请求令牌重复提交：首次请求已成功并记录过中奖事件，这里只返回相同结果
+     */
+    private SeckillResult replayedResult(SeckillRequest request) {
+        log.info("用户 {} 重复提交秒杀请求，返回首次结果: 优惠券ID={}", request.getUserId(), request.getCouponId());
+        SeckillResult seckillResult = new SeckillResult();
+        seckillResult.setSuccess(true);
+        seckillResult.setCouponId(request.getCouponId());
+        seckillResult.setActivityId(request.getActivityId());
+        seckillResult.setUserId(request.getUserId());
+        seckillResult.setQuantity(request.getActivityId() != null ? quantityOf(request) : 1);
+        seckillResult.setMessage("秒杀成功");
+        return seckillResult;
+    }
+    
+    /**
+     * 秒杀成功后的处理
+     * 中奖事件已由秒杀脚本在扣减库存的同一次调用内写入事件流，
+     * 数据库由后台批量回写，订单消息由 SeckillEventPublisher 从同一事件流批量发布并确认
+     */
+    private SeckillResult onSeckillSuccess(Long userId, Long couponId) {
+        return onSeckillSuccess(null, userId, couponId, 1);
+    }
+    
+    private SeckillResult onSeckillSuccess(Long activityId, Long userId, Long couponId, int quantity) {
+        SeckillResult seckillResult = new SeckillResult();
+        seckillResult.setSuccess(true);
+        seckillResult.setCouponId(couponId);
+        seckillResult.setActivityId(activityId);
+        seckillResult.setUserId(userId);
+        seckillResult.setQuantity(quantity);
+        seckillResult.setMessage("秒杀成功");
+        return seckillResult;
+    }
+    
     @Override
     public void initSeckillStock(Long couponId, Integer stock) {
-        String stockKey = "seckill:stock:" + couponId;
-        redisTemplate.opsForValue().set(stockKey, stock, 24, TimeUnit.HOURS);
+        redisTemplate.opsForValue().set(stockKey(couponId), stock, 24, TimeUnit.HOURS);
+        soldOutRegistry.clear(couponId);
         log.info("初始化优惠券 {} 秒杀库存: {}", couponId, stock);
     }
     
+    @Override
+    public void initSeckillActivity(SeckillActivity activity) {
+        Long activityId = activity.getId();
+        long endMillis = toEpochMillis(activity.getEndTime());
+        Map<String, String> info = new HashMap<>();
+        info.put("couponId", activity.getCouponId().toString());
+        info.put("status", String.valueOf(activity.getStatus() != null ? activity.getStatus() : 0));
+        info.put("start", String.valueOf(toEpochMillis(activity.getStartTime())));
+        info.put("end", String.valueOf(endMillis));
+        info.put("limit", String.valueOf(activity.getPerUserLimit() != null ? activity.getPerUserLimit() : 1));
+        
+        // 活动结束一天后自动过期，期间保留每人已抢数量供对账
+        Date expireAt = new Date(endMillis + TimeUnit.DAYS.toMillis(1));
+        String activityKey = activityKey(activityId);
+        String stockKey = activityStockKey(activityId);
+        stringRedisTemplate.opsForHash().putAll(activityKey, info);
+        stringRedisTemplate.opsForValue().set(stockKey, String.valueOf(activity.getSeckillStock()));
+        stringRedisTemplate.expireAt(activityKey, expireAt);
+        stringRedisTemplate.expireAt(stockKey, expireAt);
+        soldOutRegistry.clearActivity(activityId);
+        log.info("初始化秒杀活动 {}: 优惠券ID={}, 库存={}, 每人限购={}",
+                activityId, activity.getCouponId(), activity.getSeckillStock(), info.get("limit"));
+    }
+    
+    @Override
+    public void warmUpSeckill(SeckillActivity activity) {
+        // 预先载入脚本，开抢第一秒的EVALSHA不会因NOSCRIPT回退到EVAL
+        List<DefaultRedisScript<?>> scripts = Arrays.asList(seckillScript, lockFreeSeckillScript,
+                leaseClaimScript, batchSeckillScript, activitySeckillScript);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            for (DefaultRedisScript<?> script : scripts) {
+                connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        
+        // 活动售罄标记与活动当前库存保持一致
+        Long activityId = activity.getId();
+        String stock = stringRedisTemplate.opsForValue().get(activityStockKey(activityId));
+        if (stock != null && Integer.parseInt(stock) > 0) {
+            if (soldOutRegistry.isSoldOut(activity.getCouponId(), activityId)) {
+                soldOutRegistry.clearActivity(activityId);
+            }
+        } else {
+            soldOutRegistry.markActivitySoldOutLocally(activityId);
+        }
+        log.info("秒杀活动 {} 预热完成", activity.getId());
+    }
+    
+    @Override
+    public void clearSeckillActivity(SeckillActivity activity) {
+        // 先广播该活动售罄，入口立即拦截，再删除活动信息和库存；每人已抢数量保留到过期
+        // 只标记本活动，同一优惠券的其他活动和按优惠券秒杀不受影响
+        soldOutRegistry.markActivitySoldOut(activity.getId());
+        stringRedisTemplate.delete(Arrays.asList(activityKey(activity.getId()), activityStockKey(activity.getId())));
+        stringRedisTemplate.expire(activityCountKey(activity.getId()), 1, TimeUnit.DAYS);
+        log.info("秒杀活动 {} 库存已下线", activity.getId());
+    }
+    
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
     @Override
     public Integer getSeckillStock(Long couponId) {
-        String stockKey = "seckill:stock:" + couponId;
-        Object stock = redisTemplate.opsForValue().get(stockKey);
+        Object stock = redisTemplate.opsForValue().get(stockKey(couponId));
         return stock != null ? (Integer) stock : 0;
     }
     
     @Override
     public boolean checkUserSeckill(Long userId, Long couponId) {
-        String userKey = "seckill:user:" + couponId;
-        return redisTemplate.opsForSet().isMember(userKey, userId);
+        return participantTracker.isMember(stringRedisTemplate, userKey(couponId), userId);
     }
     
     /**
@@ -157,17 +746,35 @@ public class CouponSeckillServiceImpl implements CouponSeckillService {
     private String getInlineSeckillScript() {
         return "local stockKey = KEYS[1]\n" +
                "local userKey = KEYS[2]\n" +
+               "local streamKey = KEYS[3]\n" +
                "local userId = ARGV[1]\n" +
-               "local timestamp = ARGV[2]\n" +
+               "local tracker = ARGV[2]\n" +
+               "local couponId = ARGV[3]\n" +
+               "\n" +
+               "-- 位图偏移量只接受 [0, 2^32) 内的整数\n" +
+               "if tracker == 'bitmap' then\n" +
+               "    local offset = tonumber(userId)\n" +
+               "    if not offset or offset < 0 or offset > 4294967295 or offset % 1 ~= 0 then\n" +
+               "        return redis.error_reply('invalid bitmap offset: ' .. userId)\n" +
+               "    end\n" +
+               "end\n" +
                "\n" +
                "-- 检查用户是否已参与\n" +
-               "if redis.call('SISMEMBER', userKey, userId) == 1 then\n" +
-               "    return 0\n" +
+               "if tracker == 'bitmap' then\n" +
+               "    if redis.call('GETBIT', userKey, userId) == 1 then\n" +
+               "        return 2\n" +
+               "    end\n" +
+               "elseif redis.call('SISMEMBER', userKey, userId) == 1\n" +
+               "        or redis.call('SISMEMBER', userKey, '\"' .. userId .. '\"') == 1 then\n" +
+               "    return 2\n" +
                "end\n" +
                "\n" +
                "-- 检查库存\n" +
                "local stock = redis.call('GET', stockKey)\n" +
-               "if not stock or tonumber(stock) <= 0 then\n" +
+               "if not stock then\n" +
+               "    return 7\n" +
+               "end\n" +
+               "if tonumber(stock) <= 0 then\n" +
                "    return 0\n" +
                "end\n" +
                "\n" +
@@ -175,9 +782,12 @@ public class CouponSeckillServiceImpl implements CouponSeckillService {
                "local newStock = redis.call('DECR', stockKey)\n" +
                "if newStock >= 0 then\n" +
                "    -- 记录用户参与\n" +
-               "    redis.call('SADD', userKey, userId)\n" +
-               "    -- 设置用户参与时间\n" +
-               "    redis.call('HSET', userKey .. ':time', userId, timestamp)\n" +
+               "    if tracker == 'bitmap' then\n" +
+               "        redis.call('SETBIT', userKey, userId, 1)\n" +
+               "    else\n" +
+               "        redis.call('SADD', userKey, userId)\n" +
+               "    end\n" +
+               "    redis.call('XADD', streamKey, '*', 'couponId', couponId, 'userId', userId, 'quantity', 1)\n" +
                "    return 1\n" +
                "else\n" +
                "    -- 库存不足，回滚\n" +
@@ -185,46 +795,4 @@ public class CouponSeckillServiceImpl implements CouponSeckillService {
                "    return 0\n" +
                "end";
     }
-    
-    /**
-     * 同步数据库库存
-     * 根据Redis中的库存更新数据库中的used_count
-     */
-    private void syncDatabaseStock(Long couponId) {
-        try {
-            // 获取Redis中的剩余库存
-            Integer redisStock = getSeckillStock(couponId);
-            if (redisStock == null) {
-                log.warn("Redis中未找到优惠券 {} 的库存信息", couponId);
-                return;
-            }
-            
-            // 获取数据库中的优惠券信息
-            Coupon coupon = couponMapper.selectById(couponId);
-            if (coupon == null) {
-                log.warn("数据库中未找到优惠券 {}", couponId);
-                return;
-            }
-            
-            // 计算已使用数量
-            Integer totalCount = coupon.getTotalCount() != null ? coupon.getTotalCount() : 0;
-            Integer usedCount = Math.max(0, totalCount - redisStock);
-            
-            // 更新数据库
-            couponMapper.updateUsedCount(couponId, usedCount);
-            
-            log.info("同步数据库库存成功: 优惠券ID={}, 总库存={}, 已使用={}, 剩余={}", 
-                    couponId, totalCount, usedCount, redisStock);
-        } catch (Exception e) {
-            log.error("同步数据库库存失败: 优惠券ID={}", couponId, e);
-        }
-    }
 }
-
-
-
-
-
-
-
-
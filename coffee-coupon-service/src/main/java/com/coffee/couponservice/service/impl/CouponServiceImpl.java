@@ -1,13 +1,21 @@
 package com.coffee.couponservice.service.impl;
 
+import com.coffee.couponservice.component.AdminCountCache;
+import com.coffee.couponservice.component.CouponLocalCache;
+import com.coffee.couponservice.dto.PageCursor;
 import com.coffee.couponservice.entity.Coupon;
 import com.coffee.couponservice.mapper.CouponMapper;
 import com.coffee.couponservice.service.CouponService;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 优惠券服务实现类
@@ -19,24 +27,68 @@ public class CouponServiceImpl implements CouponService {
     @Autowired
     private CouponMapper couponMapper;
     
+    @Autowired
+    private CouponLocalCache couponLocalCache;
+    
+    @Autowired
+    private AdminCountCache adminCountCache;
+    
     @Override
-    public List<Coupon> getCouponList(String name, Integer status, Integer type) {
-        log.info("查询优惠券列表: name={}, status={}, type={}", name, status, type);
-        return couponMapper.selectCouponList(name, status, type);
+    public List<Coupon> getCouponPage(String name, Integer status, Integer type, PageCursor cursor, Integer page, Integer pageSize) {
+        log.info("查询优惠券列表: name={}, status={}, type={}, cursor={}, page={}", name, status, type, cursor, page);
+        int offset = cursor == null ? (page - 1) * pageSize : 0;
+        return couponMapper.selectCouponPage(name, status, type, cursor, offset, pageSize);
     }
     
     @Override
     public long countCoupons(String name, Integer status, Integer type) {
-        log.info("统计优惠券总数: name={}, status={}, type={}", name, status, type);
-        return couponMapper.countCoupons(name, status, type);
+        return adminCountCache.get(AdminCountCache.COUPON,
+                () -> couponMapper.countCoupons(name, status, type), name, status, type);
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public void exportCoupons(String name, Integer status, Integer type, Consumer<Coupon> consumer) {
+        log.info("导出优惠券: name={}, status={}, type={}", name, status, type);
+        // 游标需要在同一个连接上遍历，事务结束前读完
+        try (Cursor<Coupon> cursor = couponMapper.selectCouponCursor(name, status, type)) {
+            cursor.forEach(consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
     
     @Override
     public Coupon getCouponById(Long id) {
         log.info("查询优惠券: id={}", id);
+        // 管理端需要精确的已使用数量，不走缓存
         return couponMapper.selectById(id);
     }
     
+    @Override
+    public void createCoupon(Coupon coupon) {
+        log.info("创建优惠券: name={}", coupon.getName());
+        couponMapper.insert(coupon);
+        adminCountCache.invalidate(AdminCountCache.COUPON);
+        couponLocalCache.invalidate(coupon.getId());
+    }
+    
+    @Override
+    public void updateCoupon(Coupon coupon) {
+        log.info("更新优惠券: id={}", coupon.getId());
+        couponMapper.update(coupon);
+        adminCountCache.invalidate(AdminCountCache.COUPON);
+        couponLocalCache.invalidate(coupon.getId());
+    }
+    
+    @Override
+    public void deleteCoupon(Long id) {
+        log.info("删除优惠券: id={}", id);
+        couponMapper.deleteById(id);
+        adminCountCache.invalidate(AdminCountCache.COUPON);
+        couponLocalCache.invalidate(id);
+    }
+    
     @Override
     public void updateCouponUsedCount(Long id, Integer usedCount) {
         log.info("更新优惠券使用数量: id={}, usedCount={}", id, usedCount);
@@ -0,0 +1,61 @@
+package com.coffee.couponservice.service.impl;
+
+import com.coffee.couponservice.component.AdminCountCache;
+import com.coffee.couponservice.dto.PageCursor;
+import com.coffee.couponservice.entity.SeckillActivity;
+import com.coffee.couponservice.mapper.SeckillActivityMapper;
+import com.coffee.couponservice.service.SeckillActivityService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 秒杀活动管理服务实现类
+ */
+@Slf4j
+@Service
+public class SeckillActivityServiceImpl implements SeckillActivityService {
+    
+    @Autowired
+    private SeckillActivityMapper seckillActivityMapper;
+    
+    @Autowired
+    private AdminCountCache adminCountCache;
+    
+    @Override
+    public List<SeckillActivity> getSeckillPage(String name, Integer status, Long couponId, PageCursor cursor, Integer page, Integer pageSize) {
+        int offset = cursor == null ? (page - 1) * pageSize : 0;
+        return seckillActivityMapper.selectSeckillPage(name, status, couponId, cursor, offset, pageSize);
+    }
+    
+    @Override
+    public long countSeckills(String name, Integer status, Long couponId) {
+        return adminCountCache.get(AdminCountCache.SECKILL,
+                () -> (long) seckillActivityMapper.countSeckills(name, status, couponId), name, status, couponId);
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public void exportSeckills(String name, Integer status, Long couponId, Consumer<SeckillActivity> consumer) {
+        log.info("导出秒杀活动: name={}, status={}, couponId={}", name, status, couponId);
+        // 游标需要在同一个连接上遍历，事务结束前读完
+        try (Cursor<SeckillActivity> cursor = seckillActivityMapper.selectSeckillCursor(name, status, couponId)) {
+            cursor.forEach(consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    @Override
+    public void createSeckill(SeckillActivity activity) {
+        seckillActivityMapper.insert(activity);
+        adminCountCache.invalidate(AdminCountCache.SECKILL);
+    }
+}
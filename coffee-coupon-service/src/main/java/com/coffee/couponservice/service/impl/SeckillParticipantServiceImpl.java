@@ -0,0 +1,116 @@
+package com.coffee.couponservice.service.impl;
+
+import com.coffee.couponservice.entity.SeckillParticipant;
+import com.coffee.couponservice.entity.UserCoupon;
+import com.coffee.couponservice.mapper.SeckillParticipantMapper;
+import com.coffee.couponservice.mapper.UserCouponMapper;
+import com.coffee.couponservice.service.SeckillParticipantService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 秒杀参与记录服务实现类
+ * 整批参与记录、用户优惠券各一条多行INSERT，发放状态一条UPDATE，同一事务内完成。
+ * 按优惠券秒杀的事件没有参与记录，直接以事件ID为发放键插入用户优惠券，重复发放由唯一键忽略。
+ */
+@Slf4j
+@Service
+public class SeckillParticipantServiceImpl implements SeckillParticipantService {
+    
+    @Autowired
+    private SeckillParticipantMapper participantMapper;
+    
+    @Autowired
+    private UserCouponMapper userCouponMapper;
+    
+    @Override
+    @Transactional
+    public int saveAndIssue(List<SeckillParticipant> participants) {
+        if (participants.isEmpty()) {
+            return 0;
+        }
+        
+        // 按优惠券秒杀的事件直接发放用户优惠券
+        List<SeckillParticipant> couponWins = participants.stream()
+                .filter(participant -> participant.getActivityId() == null)
+                .collect(Collectors.toList());
+        if (!couponWins.isEmpty()) {
+            issueCouponWins(couponWins);
+            participants = participants.stream()
+                    .filter(participant -> participant.getActivityId() != null)
+                    .collect(Collectors.toList());
+            if (participants.isEmpty()) {
+                return 0;
+            }
+        }
+        
+        // 1. 跳过已落库的事件（上次写库成功但未ACK）
+        List<String> eventIds = participants.stream()
+                .map(SeckillParticipant::getEventId)
+                .collect(Collectors.toList());
+        Set<String> existing = new HashSet<>(participantMapper.selectExistingEventIds(eventIds));
+        List<SeckillParticipant> pending = participants.stream()
+                .filter(participant -> !existing.contains(participant.getEventId()))
+                .collect(Collectors.toList());
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        
+        // 2. 批量插入参与记录（状态0-待发放）
+        participantMapper.batchInsert(pending);
+        
+        // 3. 按参与数量批量发放用户优惠券
+        List<UserCoupon> userCoupons = new ArrayList<>();
+        for (SeckillParticipant participant : pending) {
+            addUserCoupons(userCoupons, participant);
+        }
+        userCouponMapper.batchInsert(userCoupons);
+        
+        // 4. 回填用户优惠券ID（多件时记录第一张），整批标记为已发放
+        int offset = 0;
+        for (SeckillParticipant participant : pending) {
+            participant.setUserCouponId(userCoupons.get(offset).getId());
+            offset += participant.getQuantity();
+        }
+        participantMapper.batchMarkIssued(pending);
+        
+        log.info("保存秒杀参与记录: 新增={}, 跳过重复={}, 发放用户优惠券={}",
+                pending.size(), participants.size() - pending.size(), userCoupons.size());
+        return pending.size();
+    }
+    
+    /**
+     * 发放按优惠券秒杀的中奖事件，已发放过的事件由唯一键跳过
+     */
+    private void issueCouponWins(List<SeckillParticipant> couponWins) {
+        List<UserCoupon> userCoupons = new ArrayList<>();
+        for (SeckillParticipant participant : couponWins) {
+            addUserCoupons(userCoupons, participant);
+        }
+        int rows = userCouponMapper.batchInsertIgnore(userCoupons);
+        log.info("发放优惠券秒杀中奖: 事件={}, 新增用户优惠券={}, 跳过重复={}",
+                couponWins.size(), rows, userCoupons.size() - rows);
+    }
+    
+    /**
+     * 按参与数量生成用户优惠券，发放键为 事件ID:序号
+     */
+    private void addUserCoupons(List<UserCoupon> userCoupons, SeckillParticipant participant) {
+        for (int i = 0; i < participant.getQuantity(); i++) {
+            UserCoupon userCoupon = new UserCoupon();
+            userCoupon.setUserId(participant.getUserId());
+            userCoupon.setCouponId(participant.getCouponId());
+            userCoupon.setStatus(1); // 1-未使用
+            userCoupon.setIssueKey(participant.getEventId() + ":" + i);
+            userCoupons.add(userCoupon);
+        }
+    }
+}
@@ -1,17 +1,19 @@
 package com.coffee.couponservice.service.impl;
 
+import com.coffee.couponservice.component.CouponClaimWriter;
+import com.coffee.couponservice.component.CouponLocalCache;
+import com.coffee.couponservice.component.ParticipantTracker;
+import com.coffee.couponservice.dto.CouponCount;
 import com.coffee.couponservice.entity.Coupon;
 import com.coffee.couponservice.entity.UserCoupon;
-import com.coffee.couponservice.mapper.CouponMapper;
 import com.coffee.couponservice.mapper.UserCouponMapper;
 import com.coffee.couponservice.service.UserCouponService;
 import com.coffee.couponservice.vo.UserCouponVO;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -20,8 +22,10 @@ import org.springframework.util.StreamUtils;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -35,17 +39,22 @@ public class UserCouponServiceImpl implements UserCouponService {
     private UserCouponMapper userCouponMapper;
     
     @Autowired
-    private CouponMapper couponMapper;
+    private StringRedisTemplate stringRedisTemplate;
     
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private CouponLocalCache couponLocalCache;
     
-    @Autowired
-    private RedissonClient redissonClient;
+    @Value("${coupon.claim.participant-tracker:SET}")
+    private ParticipantTracker participantTracker;
     
     // Lua脚本：原子性领取优惠券
     private DefaultRedisScript<Long> claimScript;
     
+    // 领取脚本返回值
+    private static final long CLAIM_SUCCESS = 1L;
+    private static final long CLAIM_REPEATED = 2L;
+    private static final long CLAIM_STOCK_MISSING = 3L;
+    
     public UserCouponServiceImpl() {
         // 初始化Lua脚本
         claimScript = new DefaultRedisScript<>();
@@ -66,18 +75,8 @@ public class UserCouponServiceImpl implements UserCouponService {
     public List<UserCoupon> getUserCoupons(Long userId, Integer status) {
         log.info("获取用户优惠券列表: userId={}, status={}", userId, status);
         
-        // 查询用户优惠券
-        List<UserCoupon> userCoupons = userCouponMapper.selectByUserId(userId);
-        
-        // 如果指定了状态，进行过滤
-        if (status != null) {
-            List<UserCoupon> filteredCoupons = userCoupons.stream()
-                    .filter(coupon -> coupon.getStatus().equals(status))
-                    .collect(Collectors.toList());
-            
-            log.info("根据状态过滤后，返回{}条优惠券", filteredCoupons.size());
-            return filteredCoupons;
-        }
+        // 状态过滤在SQL中完成
+        List<UserCoupon> userCoupons = userCouponMapper.selectByUserIdAndStatus(userId, status);
         
         log.info("返回{}条优惠券", userCoupons.size());
         return userCoupons;
@@ -87,15 +86,14 @@ public class UserCouponServiceImpl implements UserCouponService {
     public List<UserCouponVO> getUserCouponVOs(Long userId, Integer status) {
         log.info("获取用户优惠券VO列表: userId={}, status={}", userId, status);
         
-        // 查询用户优惠券
-        List<UserCoupon> userCoupons = userCouponMapper.selectByUserId(userId);
+        // 查询用户优惠券（状态过滤在SQL中完成）
+        List<UserCoupon> userCoupons = userCouponMapper.selectByUserIdAndStatus(userId, status);
         
-        // 如果指定了状态，进行过滤
-        if (status != null) {
-            userCoupons = userCoupons.stream()
-                    .filter(coupon -> coupon.getStatus().equals(status))
-                    .collect(Collectors.toList());
-        }
+        // 优惠券详情批量读取：本地缓存命中的不查库，未命中的一次批量查询
+        Set<Long> couponIds = userCoupons.stream()
+                .map(UserCoupon::getCouponId)
+                .collect(Collectors.toSet());
+        Map<Long, Coupon> coupons = couponLocalCache.getAll(couponIds);
         
         // 转换为VO
         List<UserCouponVO> userCouponVOs = userCoupons.stream().map(userCoupon -> {
@@ -111,8 +109,8 @@ public class UserCouponServiceImpl implements UserCouponService {
             vo.setCreateTime(userCoupon.getCreateTime());
             vo.setUpdateTime(userCoupon.getUpdateTime());
             
-            // 查询优惠券详情
-            Coupon coupon = couponMapper.selectById(userCoupon.getCouponId());
+            // 设置优惠券详情
+            Coupon coupon = coupons.get(userCoupon.getCouponId());
             if (coupon != null) {
                 vo.setName(coupon.getName());
                 vo.setTitle(coupon.getName()); // 标题使用名称
@@ -130,13 +128,18 @@ public class UserCouponServiceImpl implements UserCouponService {
         return userCouponVOs;
     }
     
+    /**
+     * 领取优惠券
+     * 优惠券元数据读本地缓存，Lua脚本是唯一的同步关卡（去重 + 扣库存），
+     * 领取事件在同一次脚本调用内写入事件流，由 CouponClaimWriter 异步批量落库，
+     * 请求链路不占用数据库连接和 coupons 行锁
+     */
     @Override
-    @Transactional
     public boolean claimCoupon(Long userId, Long couponId) {
         log.info("用户{}领取优惠券{}", userId, couponId);
         
         // 1. 检查优惠券是否存在且可用
-        Coupon coupon = couponMapper.selectById(couponId);
+        Coupon coupon = couponLocalCache.get(couponId);
         if (coupon == null) {
             log.warn("优惠券{}不存在", couponId);
             return false;
@@ -154,53 +157,35 @@ public class UserCouponServiceImpl implements UserCouponService {
             return false;
         }
         
-        // 3. 初始化Redis库存（如果不存在）
-        initCouponStock(couponId, coupon);
-        
-        // 4. 使用分布式锁防止重复请求
-        String lockKey = "claim:lock:" + userId + ":" + couponId;
-        RLock lock = redissonClient.getLock(lockKey);
+        // 3. 使用Lua脚本原子性领取优惠券（脚本内完成去重，无需分布式锁）
+        Long result = executeClaim(userId, couponId);
+        if (result != null && result == CLAIM_STOCK_MISSING) {
+            // 库存键不存在（首次领取、过期或被淘汰）：按数据库初始化后重试一次
+            seedCouponStock(couponId, coupon);
+            result = executeClaim(userId, couponId);
+        }
         
-        try {
-            // 尝试获取锁，最多等待1秒，锁定时间10秒
-            if (lock.tryLock(1, 10, TimeUnit.SECONDS)) {
-                // 5. 使用Lua脚本原子性领取优惠券
-                String stockKey = "coupon:stock:" + couponId;
-                String userKey = "coupon:user:" + couponId;
-                
-                Long result = redisTemplate.execute(claimScript, 
-                    Arrays.asList(stockKey, userKey), 
-                    userId.toString(), 
-                    couponId.toString(),
-                    System.currentTimeMillis());
-                
-                if (result != null && result == 1) {
-                    // 领取成功，同步到数据库
-                    syncClaimToDatabase(userId, couponId, now);
-                    log.info("用户{}成功领取优惠券{}", userId, couponId);
-                    return true;
-                } else {
-                    // 领取失败
-                    log.warn("用户{}领取优惠券{}失败，库存不足或已领取过", userId, couponId);
-                    return false;
-                }
-            } else {
-                log.warn("用户{}获取领取锁失败", userId);
-                return false;
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("获取分布式锁被中断", e);
-            return false;
-        } catch (Exception e) {
-            log.error("领取优惠券过程中发生异常", e);
-            throw e;
-        } finally {
-            // 释放锁
-            if (lock.isHeldByCurrentThread()) {
-                lock.unlock();
-            }
+        if (result != null && result == CLAIM_SUCCESS) {
+            // 领取事件已由脚本写入事件流，由 CouponClaimWriter 后台批量落库
+            log.info("用户{}成功领取优惠券{}", userId, couponId);
+            return true;
         }
+        if (result != null && result == CLAIM_REPEATED) {
+            log.warn("用户{}领取优惠券{}失败，已领取过", userId, couponId);
+        } else {
+            log.warn("用户{}领取优惠券{}失败，库存不足", userId, couponId);
+        }
+        return false;
+    }
+    
+    private Long executeClaim(Long userId, Long couponId) {
+        String stockKey = "coupon:stock:" + couponId;
+        String userKey = participantTracker.key("coupon:user:" + couponId);
+        return stringRedisTemplate.execute(claimScript, 
+            Arrays.asList(stockKey, userKey, CouponClaimWriter.STREAM_KEY), 
+            userId.toString(), 
+            participantTracker.scriptArg(),
+            couponId.toString());
     }
     
     @Override
@@ -247,52 +232,23 @@ public class UserCouponServiceImpl implements UserCouponService {
     
     /**
      * 初始化优惠券库存到Redis
+     * 只在领取脚本报告库存键不存在时调用，剩余库存 = 总数 - 已落库的用户优惠券数，
+     * 仍在领券事件流中未落库的领取由对账任务修复；SETNX保证并发初始化只有一个生效
      */
-    private void initCouponStock(Long couponId, Coupon coupon) {
+    private void seedCouponStock(Long couponId, Coupon coupon) {
         String stockKey = "coupon:stock:" + couponId;
-        if (!redisTemplate.hasKey(stockKey)) {
-            Integer totalCount = coupon.getTotalCount() != null ? coupon.getTotalCount() : 0;
-            Integer usedCount = coupon.getUsedCount() != null ? coupon.getUsedCount() : 0;
-            Integer remainingStock = Math.max(0, totalCount - usedCount);
-            
-            redisTemplate.opsForValue().set(stockKey, remainingStock);
+        int totalCount = coupon.getTotalCount() != null ? coupon.getTotalCount() : 0;
+        int issued = userCouponMapper.countByCouponIds(Collections.singletonList(couponId)).stream()
+                .mapToInt(CouponCount::getCount)
+                .sum();
+        int remainingStock = Math.max(0, totalCount - issued);
+        
+        Boolean created = stringRedisTemplate.opsForValue().setIfAbsent(stockKey, String.valueOf(remainingStock));
+        if (Boolean.TRUE.equals(created)) {
             log.info("初始化优惠券{}库存到Redis: {}", couponId, remainingStock);
         }
     }
     
-    /**
-     * 同步领取记录到数据库
-     */
-    private void syncClaimToDatabase(Long userId, Long couponId, java.time.LocalDateTime now) {
-        try {
-            // 1. 创建用户优惠券记录
-            UserCoupon userCoupon = new UserCoupon();
-            userCoupon.setUserId(userId);
-            userCoupon.setCouponId(couponId);
-            userCoupon.setStatus(1); // 1-未使用
-            userCoupon.setCreateTime(now);
-            userCoupon.setUpdateTime(now);
-            
-            int insertResult = userCouponMapper.insert(userCoupon);
-            if (insertResult <= 0) {
-                log.error("插入用户优惠券记录失败");
-                throw new RuntimeException("插入用户优惠券记录失败");
-            }
-            
-            // 2. 使用乐观锁更新优惠券使用数量
-            int updateResult = couponMapper.updateUsedCountOptimistic(couponId);
-            if (updateResult <= 0) {
-                log.error("更新优惠券使用数量失败，可能库存不足或状态异常");
-                throw new RuntimeException("更新优惠券使用数量失败");
-            }
-            
-            log.info("同步领取记录到数据库成功: userId={}, couponId={}", userId, couponId);
-        } catch (Exception e) {
-            log.error("同步领取记录到数据库失败: userId={}, couponId={}", userId, couponId, e);
-            throw e;
-        }
-    }
-    
     /**
      * 内联Lua脚本（备用）
      */
@@ -300,27 +256,39 @@ public class UserCouponServiceImpl implements UserCouponService {
         return "-- 优惠券领取Lua脚本\n" +
                 "local stockKey = KEYS[1]\n" +
                 "local userKey = KEYS[2]\n" +
+                "local streamKey = KEYS[3]\n" +
                 "local userId = ARGV[1]\n" +
-                "local couponId = ARGV[2]\n" +
-                "local timestamp = ARGV[3]\n" +
+                "local tracker = ARGV[2]\n" +
+                "local couponId = ARGV[3]\n" +
                 "\n" +
                 "-- 检查用户是否已领取过该优惠券\n" +
-                "if redis.call('SISMEMBER', userKey, userId) == 1 then\n" +
-                "    return 0\n" +
+                "if tracker == 'bitmap' then\n" +
+                "    if redis.call('GETBIT', userKey, userId) == 1 then\n" +
+                "        return 2\n" +
+                "    end\n" +
+                "elseif redis.call('SISMEMBER', userKey, userId) == 1\n" +
+                "        or redis.call('SISMEMBER', userKey, '\"' .. userId .. '\"') == 1 then\n" +
+                "    return 2\n" +
                 "end\n" +
                 "\n" +
                 "-- 获取当前库存\n" +
                 "local stock = redis.call('GET', stockKey)\n" +
-                "if not stock or tonumber(stock) <= 0 then\n" +
+                "if not stock then\n" +
+                "    return 3\n" +
+                "end\n" +
+                "if tonumber(stock) <= 0 then\n" +
                 "    return 0\n" +
                 "end\n" +
                 "\n" +
                 "-- 原子性扣减库存\n" +
                 "local newStock = redis.call('DECR', stockKey)\n" +
                 "if newStock >= 0 then\n" +
-                "    redis.call('SADD', userKey, userId)\n" +
-                "    redis.call('HSET', userKey .. ':time', userId, timestamp)\n" +
-                "    redis.call('EXPIRE', userKey .. ':time', 2592000)\n" +
+                "    if tracker == 'bitmap' then\n" +
+                "        redis.call('SETBIT', userKey, userId, 1)\n" +
+                "    else\n" +
+                "        redis.call('SADD', userKey, userId)\n" +
+                "    end\n" +
+                "    redis.call('XADD', streamKey, '*', 'couponId', couponId, 'userId', userId)\n" +
                 "    return 1\n" +
                 "else\n" +
                 "    redis.call('INCR', stockKey)\n" +
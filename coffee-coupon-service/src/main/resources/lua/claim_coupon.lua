@@ -3,18 +3,37 @@
 
 local stockKey = KEYS[1]        -- 库存键
 local userKey = KEYS[2]         -- 用户领取记录键
+local streamKey = KEYS[3]       -- 领券事件流
 local userId = ARGV[1]          -- 用户ID
-local couponId = ARGV[2]        -- 优惠券ID
-local timestamp = ARGV[3]       -- 时间戳
+local tracker = ARGV[2]         -- 领取记录方式：set / bitmap
+local couponId = ARGV[3]        -- 优惠券ID
+-- 返回值：0-库存不足 1-领取成功 2-已领取过 3-库存键不存在（需要初始化后重试）
+
+-- 位图以用户ID为偏移量，只接受 [0, 2^32) 内的整数，写入前校验，避免越界或异常偏移量
+if tracker == 'bitmap' then
+    local offset = tonumber(userId)
+    if not offset or offset < 0 or offset > 4294967295 or offset % 1 ~= 0 then
+        return redis.error_reply('invalid bitmap offset: ' .. userId)
+    end
+end
 
 -- 检查用户是否已领取过该优惠券
-if redis.call('SISMEMBER', userKey, userId) == 1 then
-    return 0  -- 已领取过
+if tracker == 'bitmap' then
+    if redis.call('GETBIT', userKey, userId) == 1 then
+        return 2  -- 已领取过
+    end
+elseif redis.call('SISMEMBER', userKey, userId) == 1
+        or redis.call('SISMEMBER', userKey, '"' .. userId .. '"') == 1 then
+    -- 兼容旧版本按JSON字符串写入的成员
+    return 2  -- 已领取过
 end
 
 -- 获取当前库存
 local stock = redis.call('GET', stockKey)
-if not stock or tonumber(stock) <= 0 then
+if not stock then
+    return 3  -- 库存键不存在（未初始化、过期或被淘汰）
+end
+if tonumber(stock) <= 0 then
     return 0  -- 库存不足
 end
 
@@ -22,14 +41,13 @@ end
 local newStock = redis.call('DECR', stockKey)
 if newStock >= 0 then
     -- 记录用户领取记录
-    redis.call('SADD', userKey, userId)
-    
-    -- 记录用户领取时间
-    redis.call('HSET', userKey .. ':time', userId, timestamp)
-    
-    -- 设置用户领取记录过期时间（30天）
-    redis.call('EXPIRE', userKey .. ':time', 2592000)
-    
+    if tracker == 'bitmap' then
+        redis.call('SETBIT', userKey, userId, 1)
+    else
+        redis.call('SADD', userKey, userId)
+    end
+    -- 与扣减库存同一次调用写入领取事件，不会出现扣了库存却丢失领取记录
+    redis.call('XADD', streamKey, '*', 'couponId', couponId, 'userId', userId)
     return 1  -- 领取成功
 else
     -- 库存不足，回滚操作
@@ -0,0 +1,17 @@
+-- 批量发券预占领券库存Lua脚本
+-- 按剩余库存预占，最多预占申请数量，库存不足时只预占剩余部分，不会扣成负数
+
+local stockKey = KEYS[1]              -- 领券库存键
+local requested = tonumber(ARGV[1])   -- 申请数量
+-- 返回值：实际预占数量，-1 表示库存键不存在（需要初始化后重试）
+
+local stock = redis.call('GET', stockKey)
+if not stock then
+    return -1
+end
+
+local reserved = math.min(requested, math.max(tonumber(stock), 0))
+if reserved > 0 then
+    redis.call('DECRBY', stockKey, reserved)
+end
+return reserved
@@ -1,19 +1,39 @@
 -- 优惠券秒杀Lua脚本
 -- 防止超卖的原子性操作
+-- 返回值：1-秒杀成功 0-库存不足 2-已参与过 7-库存键不存在（未初始化或已下线）
 
 local stockKey = KEYS[1]      -- 库存键
-local userKey = KEYS[2]       -- 用户集合键
+local userKey = KEYS[2]       -- 参与用户记录键
+local streamKey = KEYS[3]     -- 中奖事件流
 local userId = ARGV[1]        -- 用户ID
-local timestamp = ARGV[2]     -- 时间戳
+local tracker = ARGV[2]       -- 参与用户记录方式：set / bitmap
+local couponId = ARGV[3]      -- 优惠券ID
+
+-- 位图以用户ID为偏移量，只接受 [0, 2^32) 内的整数，写入前校验，避免越界或异常偏移量
+if tracker == 'bitmap' then
+    local offset = tonumber(userId)
+    if not offset or offset < 0 or offset > 4294967295 or offset % 1 ~= 0 then
+        return redis.error_reply('invalid bitmap offset: ' .. userId)
+    end
+end
 
 -- 检查用户是否已参与秒杀
-if redis.call('SISMEMBER', userKey, userId) == 1 then
-    return 0
+if tracker == 'bitmap' then
+    if redis.call('GETBIT', userKey, userId) == 1 then
+        return 2
+    end
+elseif redis.call('SISMEMBER', userKey, userId) == 1
+        or redis.call('SISMEMBER', userKey, '"' .. userId .. '"') == 1 then
+    -- 兼容旧版本按JSON字符串写入的成员
+    return 2
 end
 
 -- 获取当前库存
 local stock = redis.call('GET', stockKey)
-if not stock or tonumber(stock) <= 0 then
+if not stock then
+    return 7
+end
+if tonumber(stock) <= 0 then
     return 0
 end
 
@@ -21,18 +41,16 @@ end
 local newStock = redis.call('DECR', stockKey)
 if newStock >= 0 then
     -- 记录用户参与秒杀
-    redis.call('SADD', userKey, userId)
-    
-    -- 记录用户参与时间（用于后续分析）
-    redis.call('HSET', userKey .. ':time', userId, timestamp)
-    
-    -- 设置用户参与记录过期时间（24小时）
-    redis.call('EXPIRE', userKey .. ':time', 86400)
-    
+    if tracker == 'bitmap' then
+        redis.call('SETBIT', userKey, userId, 1)
+    else
+        redis.call('SADD', userKey, userId)
+    end
+    -- 与扣减库存同一次调用写入中奖事件，不会出现扣了库存却丢失事件
+    redis.call('XADD', streamKey, '*', 'couponId', couponId, 'userId', userId, 'quantity', 1)
     return 1
 else
     -- 库存不足，回滚操作
     redis.call('INCR', stockKey)
     return 0
 end
-
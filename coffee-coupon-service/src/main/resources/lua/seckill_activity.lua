@@ -0,0 +1,60 @@
+-- 秒杀活动Lua脚本
+-- 活动信息由预热任务写入Hash，时间窗口、每人限购和库存在一次调用内原子校验
+-- KEYS[1]：活动信息键（Hash：couponId / status / start / end / limit）
+-- KEYS[2]：活动库存键
+-- KEYS[3]：每人已抢数量键（Hash：userId -> 数量）
+-- KEYS[4]：请求令牌键
+-- KEYS[5]：中奖事件流
+-- ARGV[1]：用户ID  ARGV[2]：优惠券ID  ARGV[3]：本次数量  ARGV[4]：令牌过期时间（秒）  ARGV[5]：活动ID
+-- 返回值：1-秒杀成功 0-库存不足 2-超过每人限购 3-活动未开始 4-活动已结束 5-活动不存在
+--         6-重复提交（首次已成功） 8-剩余库存不足本次数量（未售罄）
+
+local activityKey = KEYS[1]
+local stockKey = KEYS[2]
+local countKey = KEYS[3]
+local tokenKey = KEYS[4]
+local streamKey = KEYS[5]
+local userId = ARGV[1]
+local quantity = tonumber(ARGV[3])
+
+-- 同一请求令牌重复提交，首次已成功，不再重复记录
+if redis.call('EXISTS', tokenKey) == 1 then
+    return 6
+end
+
+local activity = redis.call('HMGET', activityKey, 'couponId', 'status', 'start', 'end', 'limit')
+if not activity[1] or activity[1] ~= ARGV[2] then
+    return 5
+end
+
+-- 使用Redis服务器时间，避免各节点时钟不一致
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+if activity[2] == '2' or activity[2] == '3' or now >= tonumber(activity[4]) then
+    return 4
+end
+if now < tonumber(activity[3]) then
+    return 3
+end
+
+local limit = tonumber(activity[5]) or 1
+local bought = tonumber(redis.call('HGET', countKey, userId) or '0')
+if bought + quantity > limit then
+    return 2
+end
+
+local stock = tonumber(redis.call('GET', stockKey) or '0')
+if stock <= 0 then
+    return 0
+end
+if stock < quantity then
+    return 8
+end
+
+redis.call('DECRBY', stockKey, quantity)
+redis.call('HINCRBY', countKey, userId, quantity)
+-- 每人已抢数量在首次购买时才创建，随活动信息一起在结束一天后过期
+redis.call('PEXPIREAT', countKey, tonumber(activity[4]) + 86400000)
+redis.call('SET', tokenKey, 1, 'EX', ARGV[4])
+redis.call('XADD', streamKey, '*', 'activityId', ARGV[5], 'couponId', ARGV[2], 'userId', userId, 'quantity', quantity)
+return 1
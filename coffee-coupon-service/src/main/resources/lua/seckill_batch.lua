@@ -0,0 +1,67 @@
+-- 批量秒杀Lua脚本
+-- 同一优惠券的多个请求在一次调用内按顺序完成去重和扣库存
+-- KEYS[1]：库存键  KEYS[2]：参与用户记录键  KEYS[3]：中奖事件流  KEYS[4..]：各请求的令牌键
+-- ARGV[1]：令牌过期时间（秒）  ARGV[2]：记录方式 set / bitmap  ARGV[3]：优惠券ID  ARGV[4..]：各请求的用户ID
+-- 返回值：与请求一一对应的数组，1-秒杀成功 0-库存不足 2-已参与过 6-重复提交（首次已成功）
+--         7-库存键不存在（未初始化或已下线）
+
+local stockKey = KEYS[1]
+local userKey = KEYS[2]
+local streamKey = KEYS[3]
+local tokenTtl = ARGV[1]
+local tracker = ARGV[2]
+local couponId = ARGV[3]
+
+-- 位图以用户ID为偏移量，只接受 [0, 2^32) 内的整数；写入前整批校验，避免部分写入后才报错
+if tracker == 'bitmap' then
+    for i = 4, #ARGV do
+        local offset = tonumber(ARGV[i])
+        if not offset or offset < 0 or offset > 4294967295 or offset % 1 ~= 0 then
+            return redis.error_reply('invalid bitmap offset: ' .. ARGV[i])
+        end
+    end
+end
+
+local rawStock = redis.call('GET', stockKey)
+local stock = tonumber(rawStock or '0')
+local taken = 0
+local results = {}
+
+for i = 4, #KEYS do
+    local tokenKey = KEYS[i]
+    local userId = ARGV[i]
+    local result
+    
+    if redis.call('EXISTS', tokenKey) == 1 then
+        -- 同一请求令牌重复提交，首次已成功，不再重复记录
+        result = 6
+    elseif (tracker == 'bitmap' and redis.call('GETBIT', userKey, userId) == 1)
+            or (tracker ~= 'bitmap' and (redis.call('SISMEMBER', userKey, userId) == 1
+                -- 兼容旧版本按JSON字符串写入的成员
+                or redis.call('SISMEMBER', userKey, '"' .. userId .. '"') == 1)) then
+        result = 2
+    elseif not rawStock then
+        result = 7
+    elseif stock - taken <= 0 then
+        result = 0
+    else
+        taken = taken + 1
+        if tracker == 'bitmap' then
+            redis.call('SETBIT', userKey, userId, 1)
+        else
+            redis.call('SADD', userKey, userId)
+        end
+        redis.call('SET', tokenKey, 1, 'EX', tokenTtl)
+        redis.call('XADD', streamKey, '*', 'couponId', couponId, 'userId', userId, 'quantity', 1)
+        result = 1
+    end
+    
+    results[#results + 1] = result
+end
+
+-- 整批只扣减一次库存
+if taken > 0 then
+    redis.call('DECRBY', stockKey, taken)
+end
+
+return results
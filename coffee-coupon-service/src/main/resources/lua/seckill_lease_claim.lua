@@ -0,0 +1,38 @@
+-- 租约模式下的用户去重Lua脚本
+-- 库存已由节点本地租约扣减，这里只负责去重和请求令牌幂等
+-- 返回值：1-登记成功 2-已参与过 6-重复提交（首次已成功）
+
+local userKey = KEYS[1]       -- 参与用户记录键
+local tokenKey = KEYS[2]      -- 请求令牌键（幂等）
+local streamKey = KEYS[3]     -- 中奖事件流
+local userId = ARGV[1]        -- 用户ID
+local tokenTtl = ARGV[2]      -- 令牌过期时间（秒）
+local tracker = ARGV[3]       -- 参与用户记录方式：set / bitmap
+local couponId = ARGV[4]      -- 优惠券ID
+
+-- 位图以用户ID为偏移量，只接受 [0, 2^32) 内的整数，写入前校验，避免越界或异常偏移量
+if tracker == 'bitmap' then
+    local offset = tonumber(userId)
+    if not offset or offset < 0 or offset > 4294967295 or offset % 1 ~= 0 then
+        return redis.error_reply('invalid bitmap offset: ' .. userId)
+    end
+end
+
+-- 同一请求令牌重复提交，首次已成功，不再重复记录
+if redis.call('EXISTS', tokenKey) == 1 then
+    return 6
+end
+
+if tracker == 'bitmap' then
+    if redis.call('SETBIT', userKey, userId, 1) == 1 then
+        return 2
+    end
+elseif redis.call('SISMEMBER', userKey, '"' .. userId .. '"') == 1
+        or redis.call('SADD', userKey, userId) == 0 then
+    -- 先检查旧版本按JSON字符串写入的成员，再登记
+    return 2
+end
+
+redis.call('SET', tokenKey, 1, 'EX', tokenTtl)
+redis.call('XADD', streamKey, '*', 'couponId', couponId, 'userId', userId, 'quantity', 1)
+return 1
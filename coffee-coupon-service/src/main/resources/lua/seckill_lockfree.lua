@@ -0,0 +1,61 @@
+-- 优惠券无锁秒杀Lua脚本
+-- 脚本本身是唯一的并发协调点，不再依赖分布式锁
+-- 返回值：1-秒杀成功 0-库存不足 2-已参与过 6-重复提交（首次已成功） 7-库存键不存在（未初始化或已下线）
+
+local stockKey = KEYS[1]      -- 库存键
+local userKey = KEYS[2]       -- 参与用户记录键
+local tokenKey = KEYS[3]      -- 请求令牌键（幂等）
+local streamKey = KEYS[4]     -- 中奖事件流
+local userId = ARGV[1]        -- 用户ID
+local tokenTtl = ARGV[2]      -- 令牌过期时间（秒）
+local tracker = ARGV[3]       -- 参与用户记录方式：set / bitmap
+local couponId = ARGV[4]      -- 优惠券ID
+
+-- 位图以用户ID为偏移量，只接受 [0, 2^32) 内的整数，写入前校验，避免越界或异常偏移量
+if tracker == 'bitmap' then
+    local offset = tonumber(userId)
+    if not offset or offset < 0 or offset > 4294967295 or offset % 1 ~= 0 then
+        return redis.error_reply('invalid bitmap offset: ' .. userId)
+    end
+end
+
+-- 同一请求令牌重复提交，首次已成功，不再重复记录
+if redis.call('EXISTS', tokenKey) == 1 then
+    return 6
+end
+
+-- 检查用户是否已参与秒杀
+if tracker == 'bitmap' then
+    if redis.call('GETBIT', userKey, userId) == 1 then
+        return 2
+    end
+elseif redis.call('SISMEMBER', userKey, userId) == 1
+        or redis.call('SISMEMBER', userKey, '"' .. userId .. '"') == 1 then
+    -- 兼容旧版本按JSON字符串写入的成员
+    return 2
+end
+
+-- 检查库存
+local stock = redis.call('GET', stockKey)
+if not stock then
+    return 7
+end
+if tonumber(stock) <= 0 then
+    return 0
+end
+
+-- 扣减库存并记录用户参与
+redis.call('DECR', stockKey)
+if tracker == 'bitmap' then
+    redis.call('SETBIT', userKey, userId, 1)
+else
+    redis.call('SADD', userKey, userId)
+end
+
+-- 记录请求令牌，客户端超时重试时可拿到相同结果
+redis.call('SET', tokenKey, 1, 'EX', tokenTtl)
+
+-- 与扣减库存同一次调用写入中奖事件
+redis.call('XADD', streamKey, '*', 'couponId', couponId, 'userId', userId, 'quantity', 1)
+
+return 1
@@ -0,0 +1,15 @@
+-- 秒杀库存租约Lua脚本
+-- 节点一次性从总库存中租借一批库存到本地发放
+-- 返回值：实际租借的数量（0表示库存不足）
+
+local stockKey = KEYS[1]      -- 库存键
+local batch = tonumber(ARGV[1]) -- 期望租借数量
+
+local stock = tonumber(redis.call('GET', stockKey) or '0')
+if stock <= 0 then
+    return 0
+end
+
+local leased = math.min(stock, batch)
+redis.call('DECRBY', stockKey, leased)
+return leased
@@ -0,0 +1,10 @@
+-- 归还秒杀库存Lua脚本
+-- 库存键已被删除（活动结束下线）时不再归还，避免重新生成库存
+-- KEYS[1]：库存键
+-- ARGV[1]：归还数量
+-- 返回值：归还后的库存，-1 表示库存键不存在
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -1
+end
+return redis.call('INCRBY', KEYS[1], ARGV[1])
@@ -0,0 +1,78 @@
+package com.coffee.gateway.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 网关限流配置（gateway.rate-limit）
+ *
+ * 路由策略的 rateLimit 字段引用 policies 中的策略名称；配置在启动时绑定，修改后需要重启网关。
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.rate-limit")
+public class RateLimitProperties {
+    
+    private boolean enabled = true;
+    
+    /**
+     * 网关前可信代理的层数，0表示直接使用连接地址，大于0时从 X-Forwarded-For 中按层数取客户端地址
+     */
+    private int trustedProxies = 0;
+    
+    /**
+     * 策略名称 -> 限流参数
+     */
+    private Map<String, Limit> policies = defaultPolicies();
+    
+    private static Map<String, Limit> defaultPolicies() {
+        Map<String, Limit> policies = new HashMap<>();
+        // 兜底策略覆盖所有请求，按节点在本地限流，不为每个请求访问Redis
+        policies.put("default", new Limit(20, 40, 50, 100, true));
+        // 秒杀按用户限流（原Sentinel userSeckill规则是全局资源，无法区分用户）
+        policies.put("seckill", new Limit(5, 10, 20, 40, false));
+        // 登录注册未携带令牌，只按IP限流
+        policies.put("login", new Limit(0, 0, 5, 10, false));
+        return policies;
+    }
+    
+    /**
+     * 令牌桶参数，速率为0表示不限制该维度
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limit {
+        
+        /**
+         * 每个用户每秒生成令牌数
+         */
+        private double userRate;
+        
+        /**
+         * 每个用户的桶容量（允许的突发请求数）
+         */
+        private int userBurst;
+        
+        /**
+         * 每个IP每秒生成令牌数
+         */
+        private double ipRate;
+        
+        /**
+         * 每个IP的桶容量
+         */
+        private int ipBurst;
+        
+        /**
+         * 令牌桶只保存在本节点内存中（按节点限流，集群总速率为节点数倍），请求不访问Redis
+         */
+        private boolean local;
+    }
+}
@@ -0,0 +1,41 @@
+package com.coffee.gateway.controller;
+
+import com.coffee.common.result.Result;
+import com.coffee.gateway.filter.RateLimitFilter;
+import com.coffee.gateway.filter.ResponseCacheFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 网关指标
+ */
+@RestController
+@RequestMapping("/gateway/metrics")
+public class GatewayMetricsController {
+    
+    @Autowired
+    private ResponseCacheFilter responseCacheFilter;
+    
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+    
+    /**
+     * 响应缓存指标
+     */
+    @GetMapping("/response-cache")
+    public Result<Map<String, Object>> responseCache() {
+        return Result.success(responseCacheFilter.metrics());
+    }
+    
+    /**
+     * 限流指标
+     */
+    @GetMapping("/rate-limit")
+    public Result<Map<String, Object>> rateLimit() {
+        return Result.success(rateLimitFilter.metrics());
+    }
+}
@@ -0,0 +1,41 @@
+package com.coffee.gateway.error;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * 网关错误码及内置提示信息
+ */
+public enum ErrorCode {
+    
+    UNAUTHORIZED(HttpStatus.UNAUTHORIZED, "未授权访问", "Unauthorized"),
+    
+    TOKEN_EMPTY(HttpStatus.UNAUTHORIZED, "令牌无效", "Invalid token"),
+    
+    TOKEN_INVALID(HttpStatus.UNAUTHORIZED, "令牌无效或已过期", "Token is invalid or expired"),
+    
+    TOO_MANY_REQUESTS(HttpStatus.TOO_MANY_REQUESTS, "请求过于频繁，请稍后再试", "Too many requests, please try again later");
+    
+    private final HttpStatus status;
+    
+    private final String zhMessage;
+    
+    private final String enMessage;
+    
+    ErrorCode(HttpStatus status, String zhMessage, String enMessage) {
+        this.status = status;
+        this.zhMessage = zhMessage;
+        this.enMessage = enMessage;
+    }
+    
+    public HttpStatus getStatus() {
+        return status;
+    }
+    
+    public String getZhMessage() {
+        return zhMessage;
+    }
+    
+    public String getEnMessage() {
+        return enMessage;
+    }
+}
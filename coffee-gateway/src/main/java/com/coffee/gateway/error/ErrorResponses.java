@@ -0,0 +1,174 @@
+package com.coffee.gateway.error;
+
+import com.alibaba.fastjson.JSON;
+import com.coffee.common.result.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 网关错误响应
+ *
+ * 每种语言、每个错误码的 Result JSON 在启动时编码一次，保存为堆外只读缓冲区；
+ * 写出错误时只设置状态码和响应头，并包装缓冲区的只读视图，不再创建Map、序列化和复制字节。
+ * 提示信息可通过 gateway.error.messages.{语言}.{错误码} 覆盖或增加语言，按请求的 Accept-Language 选择，
+ * 未匹配时使用 gateway.error.default-language；配置在启动时编码，修改后需要重启网关。
+ */
+@Component
+public class ErrorResponses {
+    
+    private static final Logger log = LoggerFactory.getLogger(ErrorResponses.class);
+    
+    private static final String PROPERTY_PREFIX = "gateway.error";
+    
+    private static final String DEFAULT_LANGUAGE = "zh";
+    
+    @Autowired
+    private Environment environment;
+    
+    private Catalog catalog;
+    
+    @PostConstruct
+    public void init() {
+        catalog = load();
+    }
+    
+    /**
+     * 写出错误响应
+     */
+    public Mono<Void> write(ServerWebExchange exchange, ErrorCode code) {
+        ByteBuffer body = catalog.get(exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT_LANGUAGE), code);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(code.getStatus());
+        HttpHeaders headers = response.getHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setContentLength(body.remaining());
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body.duplicate())));
+    }
+    
+    private Catalog load() {
+        Binder binder = Binder.get(environment);
+        String defaultLanguage = binder.bind(PROPERTY_PREFIX + ".default-language", String.class)
+                .orElse(DEFAULT_LANGUAGE);
+        Bindable<Map<String, Map<String, String>>> bindable = Bindable.of(ResolvableType.forClassWithGenerics(Map.class,
+                ResolvableType.forClass(String.class), ResolvableType.forClassWithGenerics(Map.class, String.class, String.class)));
+        Map<String, Map<String, String>> configured = binder.bind(PROPERTY_PREFIX + ".messages", bindable)
+                .orElse(Collections.emptyMap());
+        
+        // 内置中英文提示，配置的语言和错误码在其上覆盖；新增语言缺少的错误码使用默认语言的提示
+        Map<String, Map<ErrorCode, String>> messages = new LinkedHashMap<>();
+        Map<ErrorCode, String> zh = new EnumMap<>(ErrorCode.class);
+        Map<ErrorCode, String> en = new EnumMap<>(ErrorCode.class);
+        for (ErrorCode code : ErrorCode.values()) {
+            zh.put(code, code.getZhMessage());
+            en.put(code, code.getEnMessage());
+        }
+        messages.put("zh", zh);
+        messages.put("en", en);
+        Map<ErrorCode, String> fallback = messages.getOrDefault(defaultLanguage, zh);
+        configured.forEach((language, entries) -> {
+            Map<ErrorCode, String> target = messages.computeIfAbsent(language, k -> new EnumMap<>(fallback));
+            entries.forEach((name, message) -> {
+                try {
+                    target.put(ErrorCode.valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_')), message);
+                } catch (IllegalArgumentException e) {
+                    log.warn("未知的网关错误码: {}.{}", language, name);
+                }
+            });
+        });
+        
+        // 长的语言标签在前，前缀匹配时 zh-TW、en-GB 先于内置的 zh、en
+        List<String> ordered = new ArrayList<>(messages.keySet());
+        ordered.sort((a, b) -> Integer.compare(b.length(), a.length()));
+        String[] languages = new String[ordered.size()];
+        ByteBuffer[][] bodies = new ByteBuffer[ordered.size()][];
+        for (int i = 0; i < ordered.size(); i++) {
+            languages[i] = ordered.get(i);
+            bodies[i] = encode(messages.get(ordered.get(i)));
+        }
+        ByteBuffer[] defaults = bodies[Math.max(0, indexOf(languages, defaultLanguage))];
+        return new Catalog(languages, bodies, defaults);
+    }
+    
+    private static ByteBuffer[] encode(Map<ErrorCode, String> messages) {
+        ByteBuffer[] bodies = new ByteBuffer[ErrorCode.values().length];
+        for (ErrorCode code : ErrorCode.values()) {
+            byte[] json = JSON.toJSONString(Result.error(code.getStatus().value(), messages.get(code)))
+                    .getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(json.length);
+            buffer.put(json).flip();
+            bodies[code.ordinal()] = buffer.asReadOnlyBuffer();
+        }
+        return bodies;
+    }
+    
+    private static int indexOf(String[] languages, String language) {
+        for (int i = 0; i < languages.length; i++) {
+            if (languages[i].equalsIgnoreCase(language)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * 编码好的错误响应（不可变）：语言 -> 按错误码序号存放的响应体
+     */
+    private static final class Catalog {
+        private final String[] languages;
+        private final ByteBuffer[][] bodies;
+        private final ByteBuffer[] defaults;
+        
+        Catalog(String[] languages, ByteBuffer[][] bodies, ByteBuffer[] defaults) {
+            this.languages = languages;
+            this.bodies = bodies;
+            this.defaults = defaults;
+        }
+        
+        /**
+         * 按 Accept-Language 的首选语言前缀匹配（如 en-US 匹配 en），语言按标签长度降序排列，
+         * 最长的匹配优先（zh-TW 优先于 zh）；前缀之后必须是子标签或语言项的边界（en 不匹配 eo、enx），不创建对象
+         */
+        ByteBuffer get(String acceptLanguage, ErrorCode code) {
+            if (acceptLanguage != null) {
+                for (int i = 0; i < languages.length; i++) {
+                    String language = languages[i];
+                    if (acceptLanguage.regionMatches(true, 0, language, 0, language.length())
+                            && isBoundary(acceptLanguage, language.length())) {
+                        return bodies[i][code.ordinal()];
+                    }
+                }
+            }
+            return defaults[code.ordinal()];
+        }
+        
+        private static boolean isBoundary(String acceptLanguage, int index) {
+            if (index >= acceptLanguage.length()) {
+                return true;
+            }
+            char c = acceptLanguage.charAt(index);
+            return c == '-' || c == '_' || c == ',' || c == ';' || c == ' ';
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package com.coffee.gateway.filter;
 
 import com.alibaba.fastjson.JSON;
-import com.coffee.common.utils.JwtUtils;
-import com.coffee.gateway.config.GatewayConfig;
+import com.coffee.common.utils.JwtClaims;
+import com.coffee.gateway.error.ErrorCode;
+import com.coffee.gateway.error.ErrorResponses;
+import com.coffee.gateway.route.AuthPolicy;
+import com.coffee.gateway.route.RoutePolicyRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.core.Ordered;
@@ -24,6 +28,20 @@ public class AuthGlobalFilter implements GlobalFilter, Ordered {
     
     private static final Logger log = LoggerFactory.getLogger(AuthGlobalFilter.class);
     
+    /**
+     * 令牌验证通过后保存用户ID的交换属性，供后续过滤器使用（请求头可被客户端伪造）
+     */
+    public static final String USER_ID_ATTRIBUTE = AuthGlobalFilter.class.getName() + ".userId";
+    
+    @Autowired
+    private JwtClaimsCache jwtClaimsCache;
+    
+    @Autowired
+    private RoutePolicyRegistry routePolicyRegistry;
+    
+    @Autowired
+    private ErrorResponses errorResponses;
+    
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         ServerHttpRequest request = exchange.getRequest();
@@ -35,8 +53,9 @@ public class AuthGlobalFilter implements GlobalFilter, Ordered {
             return chain.filter(exchange);
         }
         
-        // 跳过不需要认证的路径
-        if (isSkipAuth(path)) {
+        // 跳过不需要认证的路径（路由策略前缀树最长前缀匹配）
+        AuthPolicy authPolicy = routePolicyRegistry.match(path).getAuth();
+        if (authPolicy == AuthPolicy.PUBLIC) {
             return chain.filter(exchange);
         }
         
@@ -44,13 +63,22 @@ public class AuthGlobalFilter implements GlobalFilter, Ordered {
         String authorization = request.getHeaders().getFirst("Authorization");
         ServerHttpRequest newRequest = request;
         
+        // 令牌只验证一次，提取用户信息和后面的有效性判断共用同一结果
+        JwtClaims claims = null;
+        
         // 如果请求头中有Authorization，尝试提取用户信息
         if (StringUtils.hasText(authorization) && authorization.startsWith("Bearer ")) {
             String token = authorization.substring(7);
-            if (StringUtils.hasText(token) && JwtUtils.validateToken(token)) {
+            if (StringUtils.hasText(token)) {
+                claims = jwtClaimsCache.verify(token);
+            }
+            if (claims != null) {
                 // 从JWT中提取用户信息并传递给下游服务
-                String userId = JwtUtils.getUserIdFromToken(token);
-                String username = JwtUtils.getUsernameFromToken(token);
+                String userId = claims.getUserId();
+                String username = claims.getUsername();
+                if (userId != null) {
+                    exchange.getAttributes().put(USER_ID_ATTRIBUTE, userId);
+                }
                 
                 // 将用户信息添加到请求头中，传递给下游服务
                 newRequest = request.mutate()
@@ -63,7 +91,7 @@ public class AuthGlobalFilter implements GlobalFilter, Ordered {
         }
         
         // TODO: 临时跳过订单接口和用户优惠券接口的认证，用于测试
-        if (path.startsWith("/order/") || path.startsWith("/user/coupons/")) {
+        if (authPolicy == AuthPolicy.MOCK_USER) {
             log.warn("临时跳过接口认证: {}", path);
             // 为测试添加模拟用户ID
             newRequest = request.mutate()
@@ -76,52 +104,26 @@ public class AuthGlobalFilter implements GlobalFilter, Ordered {
         // 对于其他路径，如果没有认证信息，返回401
         if (!StringUtils.hasText(authorization) || !authorization.startsWith("Bearer ")) {
             log.warn("请求路径 {} 缺少认证信息", path);
-            return GatewayConfig.handleError(exchange, "未授权访问");
+            return errorResponses.write(exchange, ErrorCode.UNAUTHORIZED);
         }
         
         // 验证JWT是否有效
         String token = authorization.substring(7);
         if (!StringUtils.hasText(token)) {
             log.warn("请求路径 {} 令牌为空", path);
-            return GatewayConfig.handleError(exchange, "令牌无效");
+            return errorResponses.write(exchange, ErrorCode.TOKEN_EMPTY);
         }
         
         // 验证JWT是否有效
-        if (!JwtUtils.validateToken(token)) {
+        if (claims == null) {
             log.warn("请求路径 {} JWT无效或已过期", path);
-            return GatewayConfig.handleError(exchange, "令牌无效或已过期");
+            return errorResponses.write(exchange, ErrorCode.TOKEN_INVALID);
         }
         
         log.info("请求路径 {} 认证通过", path);
         return chain.filter(exchange.mutate().request(newRequest).build());
     }
     
-    /**
-     * 判断是否需要跳过认证
-     */
-    private boolean isSkipAuth(String path) {
-        // 登录、注册等公开接口
-        String[] skipPaths = {
-                "/user/login",
-                "/user/register",
-                "/admin/login",  // 管理端登录
-                "/product/list",
-                "/product/recommended",
-                "/product/hot",
-                "/public/",
-                "/public/coupons",
-                "/product/"
-        };
-        
-        for (String skipPath : skipPaths) {
-            if (path.startsWith(skipPath)) {
-                return true;
-            }
-        }
-        
-        return false;
-    }
-    
     @Override
     public int getOrder() {
         return -100; // 优先级最高
@@ -0,0 +1,94 @@
+package com.coffee.gateway.filter;
+
+import com.coffee.common.utils.JwtClaims;
+import com.coffee.common.utils.JwtUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已验证JWT声明缓存
+ *
+ * 以令牌的SHA-256摘要为键（不在内存中保存令牌原文），缓存验签通过的声明：
+ * 同一会话的后续请求直接命中，不再解析、验签。
+ * 每个条目在令牌过期时间和最大存活时间中较早者失效，读取时再次检查过期时间；
+ * 验签失败的令牌不缓存。容量有上限，按W-TinyLFU淘汰。
+ */
+@Component
+public class JwtClaimsCache {
+    
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    
+    @Value("${gateway.auth.claims-cache.maximum-size:100000}")
+    private long maximumSize;
+    
+    @Value("${gateway.auth.claims-cache.max-ttl-ms:600000}")
+    private long maxTtlMillis;
+    
+    private Cache<String, JwtClaims> cache;
+    
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, JwtClaims>() {
+                    @Override
+                    public long expireAfterCreate(String key, JwtClaims claims, long currentTime) {
+                        long ttl = Math.min(claims.getExpiresAt() - System.currentTimeMillis(), maxTtlMillis);
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttl));
+                    }
+                    
+                    @Override
+                    public long expireAfterUpdate(String key, JwtClaims claims, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, claims, currentTime);
+                    }
+                    
+                    @Override
+                    public long expireAfterRead(String key, JwtClaims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+    
+    /**
+     * 验证令牌，命中缓存时跳过验签
+     * @return 令牌无效或已过期时返回null
+     */
+    public JwtClaims verify(String token) {
+        String key = digest(token);
+        JwtClaims claims = cache.getIfPresent(key);
+        if (claims != null) {
+            if (!claims.isExpired(System.currentTimeMillis())) {
+                return claims;
+            }
+            cache.invalidate(key);
+            return null;
+        }
+        claims = JwtUtils.verify(token);
+        if (claims != null) {
+            cache.put(key, claims);
+        }
+        return claims;
+    }
+    
+    private static String digest(String token) {
+        byte[] hash = SHA256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+}
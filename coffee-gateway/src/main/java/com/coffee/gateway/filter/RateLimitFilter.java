@@ -0,0 +1,315 @@
+package com.coffee.gateway.filter;
+
+import com.coffee.gateway.config.RateLimitProperties;
+import com.coffee.gateway.error.ErrorCode;
+import com.coffee.gateway.error.ErrorResponses;
+import com.coffee.gateway.route.RoutePolicyRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 限流全局过滤器
+ *
+ * 按路由策略的 rateLimit 找到限流参数，分别对用户（令牌验证通过的userId）和客户端IP使用令牌桶：
+ * 1. 令牌桶保存在Redis中，一次Lua脚本调用同时检查用户和IP两个桶，全部有令牌时才同时扣减，
+ *    被IP限流拒绝的请求不会消耗用户的令牌；集群内所有网关节点共享
+ * 2. 本地预检：Redis拒绝时返回下一个令牌的时间，此前同一个桶的请求直接在本地拒绝，不再访问Redis
+ * 3. 标记为 local 的策略（如兜底的 default）令牌桶只保存在本节点内存中，按节点限流，请求不访问Redis
+ * 4. Redis不可用时放行，限流故障不影响正常请求
+ * 在响应缓存之后执行，命中网关缓存的请求不消耗令牌。被拒绝的请求返回429，不会转发到下游服务。
+ */
+@Component
+public class RateLimitFilter implements GlobalFilter, Ordered {
+    
+    private static final Logger log = LoggerFactory.getLogger(RateLimitFilter.class);
+    
+    private static final String KEY_PREFIX = "gateway:rate:";
+    
+    @Autowired
+    private ReactiveStringRedisTemplate redisTemplate;
+    
+    @Autowired
+    private RoutePolicyRegistry routePolicyRegistry;
+    
+    @Autowired
+    private RateLimitProperties properties;
+    
+    @Autowired
+    private ErrorResponses errorResponses;
+    
+    @Value("${gateway.rate-limit.local-maximum-size:100000}")
+    private long localMaximumSize;
+    
+    // Lua脚本：令牌桶取令牌，返回每个桶的等待毫秒数
+    private final DefaultRedisScript<List> tokenBucketScript;
+    
+    /**
+     * 本地预检：令牌桶键 -> 下一个令牌可用的时间（毫秒）
+     */
+    private Cache<String, Long> blockedUntil;
+    
+    /**
+     * 本节点令牌桶（local 策略）：令牌桶键 -> 令牌桶
+     */
+    private Cache<String, LocalBucket> localBuckets;
+    
+    // 限流指标
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder allowedLocal = new LongAdder();
+    private final LongAdder rejectedLocal = new LongAdder();
+    private final LongAdder rejectedRedis = new LongAdder();
+    private final LongAdder redisErrors = new LongAdder();
+    
+    public RateLimitFilter() {
+        tokenBucketScript = new DefaultRedisScript<>();
+        tokenBucketScript.setResultType(List.class);
+        tokenBucketScript.setLocation(new ClassPathResource("lua/token_bucket.lua"));
+    }
+    
+    @PostConstruct
+    public void init() {
+        blockedUntil = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        localBuckets = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .build();
+    }
+    
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!properties.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        String policyName = routePolicyRegistry.match(exchange.getRequest().getURI().getPath()).getRateLimit();
+        RateLimitProperties.Limit limit = policyName != null ? properties.getPolicies().get(policyName) : null;
+        if (limit == null) {
+            return chain.filter(exchange);
+        }
+        
+        String userId = exchange.getAttribute(AuthGlobalFilter.USER_ID_ATTRIBUTE);
+        String userKey = userId != null && limit.getUserRate() > 0
+                ? bucketKey(policyName, "u", userId) : null;
+        String ip = clientIp(exchange);
+        String ipKey = ip != null && limit.getIpRate() > 0
+                ? bucketKey(policyName, "ip", ip) : null;
+        
+        if (userKey == null && ipKey == null) {
+            return chain.filter(exchange);
+        }
+        
+        if (limit.isLocal()) {
+            long wait = acquireLocal(userKey, ipKey, limit);
+            if (wait > 0) {
+                rejectedLocal.increment();
+                return reject(exchange, wait);
+            }
+            allowedLocal.increment();
+            return chain.filter(exchange);
+        }
+        
+        // 本地预检
+        long now = System.currentTimeMillis();
+        long localWait = Math.max(localWait(userKey, now), localWait(ipKey, now));
+        if (localWait > 0) {
+            rejectedLocal.increment();
+            return reject(exchange, localWait);
+        }
+        
+        return acquire(userKey, ipKey, limit)
+                .flatMap(wait -> {
+                    if (wait > 0) {
+                        rejectedRedis.increment();
+                        return reject(exchange, wait);
+                    }
+                    allowed.increment();
+                    return chain.filter(exchange);
+                });
+    }
+    
+    /**
+     * 令牌桶键，策略名作为hash tag：同一请求的用户桶和IP桶落在同一个集群slot，可以在一次脚本调用内检查
+     */
+    private static String bucketKey(String policyName, String dimension, String id) {
+        return KEY_PREFIX + "{" + policyName + "}:" + dimension + ":" + id;
+    }
+    
+    /**
+     * 一次脚本调用从用户和IP两个Redis令牌桶各取一个令牌，任一不足时都不扣减
+     * @return 0表示取到，大于0为距离下一个令牌的毫秒数（取各桶的最大值）
+     */
+    private Mono<Long> acquire(String userKey, String ipKey, RateLimitProperties.Limit limit) {
+        List<String> keys = new ArrayList<>(2);
+        List<String> args = new ArrayList<>(4);
+        if (userKey != null) {
+            keys.add(userKey);
+            args.add(String.valueOf(limit.getUserRate()));
+            args.add(String.valueOf(Math.max(1, limit.getUserBurst())));
+        }
+        if (ipKey != null) {
+            keys.add(ipKey);
+            args.add(String.valueOf(limit.getIpRate()));
+            args.add(String.valueOf(Math.max(1, limit.getIpBurst())));
+        }
+        return redisTemplate.execute(tokenBucketScript, keys, args)
+                .next()
+                .map(waits -> {
+                    long now = System.currentTimeMillis();
+                    long max = 0;
+                    for (int i = 0; i < keys.size() && i < waits.size(); i++) {
+                        long wait = ((Number) waits.get(i)).longValue();
+                        if (wait > 0) {
+                            // 只预检不足的桶，同一用户换IP或同一IP换用户不受影响
+                            blockedUntil.put(keys.get(i), now + wait);
+                            max = Math.max(max, wait);
+                        }
+                    }
+                    return max;
+                })
+                .defaultIfEmpty(0L)
+                .onErrorResume(e -> {
+                    redisErrors.increment();
+                    log.warn("限流令牌桶访问Redis失败，放行请求: {}", e.getMessage());
+                    return Mono.just(0L);
+                });
+    }
+    
+    /**
+     * 从本节点的用户和IP令牌桶各取一个令牌，任一不足时都不扣减
+     * @return 0表示取到，大于0为距离下一个令牌的毫秒数
+     */
+    private long acquireLocal(String userKey, String ipKey, RateLimitProperties.Limit limit) {
+        long now = System.currentTimeMillis();
+        LocalBucket user = userKey != null
+                ? localBuckets.get(userKey, key -> new LocalBucket(limit.getUserBurst(), now)) : null;
+        LocalBucket ip = ipKey != null
+                ? localBuckets.get(ipKey, key -> new LocalBucket(limit.getIpBurst(), now)) : null;
+        if (user == null) {
+            synchronized (ip) {
+                return take(null, ip, limit, now);
+            }
+        }
+        if (ip == null) {
+            synchronized (user) {
+                return take(user, null, limit, now);
+            }
+        }
+        // 固定先用户后IP的加锁顺序
+        synchronized (user) {
+            synchronized (ip) {
+                return take(user, ip, limit, now);
+            }
+        }
+    }
+    
+    /**
+     * 补充令牌后，两个桶都有令牌时同时扣减（调用方持有桶的锁）
+     */
+    private static long take(LocalBucket user, LocalBucket ip, RateLimitProperties.Limit limit, long now) {
+        long userWait = user != null ? user.refill(limit.getUserRate(), limit.getUserBurst(), now) : 0;
+        long ipWait = ip != null ? ip.refill(limit.getIpRate(), limit.getIpBurst(), now) : 0;
+        if (userWait > 0 || ipWait > 0) {
+            return Math.max(userWait, ipWait);
+        }
+        if (user != null) {
+            user.tokens--;
+        }
+        if (ip != null) {
+            ip.tokens--;
+        }
+        return 0;
+    }
+    
+    private long localWait(String key, long now) {
+        if (key == null) {
+            return 0;
+        }
+        Long until = blockedUntil.getIfPresent(key);
+        return until != null && until > now ? until - now : 0;
+    }
+    
+    private Mono<Void> reject(ServerWebExchange exchange, long waitMillis) {
+        exchange.getResponse().getHeaders().set("Retry-After",
+                String.valueOf(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(waitMillis + 999))));
+        return errorResponses.write(exchange, ErrorCode.TOO_MANY_REQUESTS);
+    }
+    
+    private String clientIp(ServerWebExchange exchange) {
+        InetSocketAddress address = properties.getTrustedProxies() > 0
+                ? XForwardedRemoteAddressResolver.maxTrustedIndex(properties.getTrustedProxies()).resolve(exchange)
+                : exchange.getRequest().getRemoteAddress();
+        if (address == null) {
+            return null;
+        }
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+    
+    /**
+     * 限流指标：放行数（Redis / 本节点令牌桶）、本地拒绝数、Redis拒绝数、Redis异常数
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("allowed", allowed.sum());
+        metrics.put("allowedLocal", allowedLocal.sum());
+        metrics.put("rejectedLocal", rejectedLocal.sum());
+        metrics.put("rejectedRedis", rejectedRedis.sum());
+        metrics.put("redisErrors", redisErrors.sum());
+        metrics.put("blockedBuckets", blockedUntil.estimatedSize());
+        metrics.put("localBuckets", localBuckets.estimatedSize());
+        return metrics;
+    }
+    
+    @Override
+    public int getOrder() {
+        // 在认证过滤器（需要用户ID）和响应缓存之后，命中缓存的请求不经过限流
+        return -85;
+    }
+    
+    /**
+     * 本节点令牌桶，调用方持有锁
+     */
+    private static final class LocalBucket {
+        private double tokens;
+        private long ts;
+        
+        LocalBucket(int burst, long now) {
+            this.tokens = Math.max(1, burst);
+            this.ts = now;
+        }
+        
+        /**
+         * 按经过的时间补充令牌
+         * @return 0表示有令牌，大于0为距离下一个令牌的毫秒数
+         */
+        long refill(double rate, int burst, long now) {
+            tokens = Math.min(Math.max(1, burst), tokens + Math.max(0, now - ts) * rate / 1000);
+            ts = Math.max(ts, now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1000 / rate);
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.coffee.gateway.filter;
+
+import com.coffee.gateway.route.AuthPolicy;
+import com.coffee.gateway.route.RoutePolicy;
+import com.coffee.gateway.route.RoutePolicyRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 公开接口响应缓存全局过滤器
+ *
+ * 只缓存路由策略配置了 cacheTtlMs 的公开接口的GET请求，缓存键为路径加规范化（按参数名排序）的查询串：
+ * 1. 200响应体复制到堆外直接内存，按字节数限制缓存总量；返回时包装为只读视图，不再复制
+ * 2. 同一键的并发未命中只有一个请求转发下游，其余请求等待它的结果
+ * 3. 超过缓存时间但仍在过期宽限期内时，所有请求（包括触发刷新的请求）直接返回旧响应，
+ *    由一个后台请求转发下游刷新，刷新失败时继续使用旧响应直到宽限期结束
+ * 4. 转发下游时去掉客户端的条件请求头（If-None-Match / If-Modified-Since），下游总是返回完整响应用于缓存，
+ *    客户端的条件请求由缓存的ETag在网关应答
+ * 响应头 X-Gateway-Cache 标明 HIT / STALE / MISS。
+ */
+@Component
+public class ResponseCacheFilter implements GlobalFilter, Ordered {
+    
+    private static final Logger log = LoggerFactory.getLogger(ResponseCacheFilter.class);
+    
+    private static final String CACHE_HEADER = "X-Gateway-Cache";
+    
+    @Autowired
+    private RoutePolicyRegistry routePolicyRegistry;
+    
+    @Value("${gateway.response-cache.max-bytes:67108864}")
+    private long maxBytes;
+    
+    @Value("${gateway.response-cache.max-entry-bytes:1048576}")
+    private int maxEntryBytes;
+    
+    /**
+     * 过期宽限期：超过缓存时间后仍可返回旧响应的时长
+     */
+    @Value("${gateway.response-cache.stale-ms:30000}")
+    private long staleMillis;
+    
+    /**
+     * 等待同键请求结果的超时时间，超时后自行转发下游
+     */
+    @Value("${gateway.response-cache.wait-timeout-ms:3000}")
+    private long waitTimeoutMillis;
+    
+    private Cache<String, CachedResponse> cache;
+    
+    /**
+     * 正在转发下游的缓存键
+     */
+    private final Map<String, Sinks.One<CachedResponse>> inflight = new ConcurrentHashMap<>();
+    
+    // 缓存指标
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder staleOnError = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedResponse value) -> value.body.capacity() + key.length())
+                .expireAfter(new Expiry<String, CachedResponse>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedResponse value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(value.ttlMillis + staleMillis);
+                    }
+                    
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResponse value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+                    
+                    @Override
+                    public long expireAfterRead(String key, CachedResponse value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+    
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getMethod() != HttpMethod.GET) {
+            return chain.filter(exchange);
+        }
+        RoutePolicy policy = routePolicyRegistry.match(request.getURI().getPath());
+        if (policy.getCacheTtlMillis() <= 0 || policy.getAuth() != AuthPolicy.PUBLIC) {
+            return chain.filter(exchange);
+        }
+        
+        String key = cacheKey(request);
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            hits.increment();
+            return write(exchange, exchange.getResponse(), cached, "HIT");
+        }
+        
+        Sinks.One<CachedResponse> sink = Sinks.one();
+        Sinks.One<CachedResponse> running = inflight.putIfAbsent(key, sink);
+        if (running != null) {
+            if (cached != null) {
+                // 已有请求在刷新，直接返回旧响应
+                staleHits.increment();
+                return write(exchange, exchange.getResponse(), cached, "STALE");
+            }
+            // 等待同键请求的结果，对方失败或超时时自行转发
+            coalesced.increment();
+            return running.asMono()
+                    .timeout(Duration.ofMillis(waitTimeoutMillis), Mono.empty())
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(result -> result.isPresent()
+                            ? write(exchange, exchange.getResponse(), result.get(), "HIT")
+                            : chain.filter(exchange));
+        }
+        
+        if (cached != null) {
+            // 后台刷新，本请求也直接返回旧响应，不等待下游
+            revalidations.increment();
+            staleHits.increment();
+            revalidate(exchange, chain, key, policy.getCacheTtlMillis(), sink);
+            return write(exchange, exchange.getResponse(), cached, "STALE");
+        }
+        
+        misses.increment();
+        return fetch(exchange, chain, key, policy.getCacheTtlMillis(), sink)
+                .doFinally(signal -> {
+                    inflight.remove(key, sink);
+                    // 未成功缓存时通知等待者自行转发
+                    sink.tryEmitEmpty();
+                });
+    }
+    
+    /**
+     * 转发下游并缓存200响应
+     */
+    private Mono<Void> fetch(ServerWebExchange exchange, GatewayFilterChain chain, String key, long ttlMillis,
+                             Sinks.One<CachedResponse> sink) {
+        ServerHttpResponseDecorator decorated = new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                if (getStatusCode() != HttpStatus.OK) {
+                    return super.writeWith(body);
+                }
+                return DataBufferUtils.join(body).flatMap(joined -> {
+                    if (joined.readableByteCount() > maxEntryBytes) {
+                        return getDelegate().writeWith(Mono.just(joined));
+                    }
+                    CachedResponse response = store(key, ttlMillis, sink, getDelegate().getHeaders(), joined);
+                    return write(exchange, getDelegate(), response, "MISS");
+                });
+            }
+        };
+        return chain.filter(upstream(exchange).response(decorated).build());
+    }
+    
+    /**
+     * 后台刷新：下游响应写入独立的响应对象，只用于更新缓存，不影响已返回给客户端的旧响应
+     */
+    private void revalidate(ServerWebExchange exchange, GatewayFilterChain chain, String key, long ttlMillis,
+                            Sinks.One<CachedResponse> sink) {
+        DetachedResponse detached = new DetachedResponse(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                if (getStatusCode() != HttpStatus.OK) {
+                    staleOnError.increment();
+                    log.warn("刷新网关缓存失败，继续使用旧响应: {}, 状态码: {}", key, getRawStatusCode());
+                    return Flux.from(body).doOnNext(DataBufferUtils::release).then(setComplete());
+                }
+                return DataBufferUtils.join(body).doOnNext(joined -> {
+                    if (joined.readableByteCount() > maxEntryBytes) {
+                        DataBufferUtils.release(joined);
+                        return;
+                    }
+                    store(key, ttlMillis, sink, getHeaders(), joined);
+                }).then(setComplete());
+            }
+        };
+        chain.filter(upstream(exchange).response(detached).build())
+                .doOnError(e -> {
+                    staleOnError.increment();
+                    log.warn("刷新网关缓存失败，继续使用旧响应: {}, {}", key, e.getMessage());
+                })
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(signal -> {
+                    inflight.remove(key, sink);
+                    sink.tryEmitEmpty();
+                })
+                .subscribe();
+    }
+    
+    /**
+     * 转发下游的请求去掉条件请求头，避免下游返回304导致缓存无法更新
+     */
+    private static ServerWebExchange.Builder upstream(ServerWebExchange exchange) {
+        return exchange.mutate().request(builder -> builder.headers(headers -> {
+            headers.remove(HttpHeaders.IF_NONE_MATCH);
+            headers.remove(HttpHeaders.IF_MODIFIED_SINCE);
+        }));
+    }
+    
+    /**
+     * 响应体复制到堆外直接内存并放入缓存，通知等待同键结果的请求
+     */
+    private CachedResponse store(String key, long ttlMillis, Sinks.One<CachedResponse> sink,
+                                 HttpHeaders headers, DataBuffer joined) {
+        ByteBuffer direct = ByteBuffer.allocateDirect(joined.readableByteCount());
+        direct.put(joined.asByteBuffer());
+        direct.flip();
+        DataBufferUtils.release(joined);
+        
+        CachedResponse response = new CachedResponse(direct.asReadOnlyBuffer(), headers.getContentType(),
+                headers.getETag(), ttlMillis, System.currentTimeMillis());
+        cache.put(key, response);
+        stores.increment();
+        sink.tryEmitValue(response);
+        return response;
+    }
+    
+    private Mono<Void> write(ServerWebExchange exchange, ServerHttpResponse response, CachedResponse cached, String state) {
+        HttpHeaders headers = response.getHeaders();
+        headers.set(CACHE_HEADER, state);
+        if (cached.etag != null) {
+            headers.setETag(cached.etag);
+            if (exchange.getRequest().getHeaders().getIfNoneMatch().contains(cached.etag)) {
+                response.setStatusCode(HttpStatus.NOT_MODIFIED);
+                headers.remove(HttpHeaders.CONTENT_LENGTH);
+                return response.setComplete();
+            }
+        }
+        response.setStatusCode(HttpStatus.OK);
+        if (cached.contentType != null) {
+            headers.setContentType(cached.contentType);
+        }
+        headers.setContentLength(cached.body.remaining());
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.body.duplicate())));
+    }
+    
+    /**
+     * 路径 + 按参数名排序的查询串，参数顺序不同的请求共用缓存
+     */
+    private static String cacheKey(ServerHttpRequest request) {
+        String path = request.getURI().getPath();
+        MultiValueMap<String, String> params = request.getQueryParams();
+        if (params.isEmpty()) {
+            return path;
+        }
+        List<String> names = new ArrayList<>(params.keySet());
+        Collections.sort(names);
+        StringBuilder key = new StringBuilder(path).append('?');
+        for (String name : names) {
+            for (String value : params.get(name)) {
+                key.append(name).append('=').append(value != null ? value : "").append('&');
+            }
+        }
+        key.setLength(key.length() - 1);
+        return key.toString();
+    }
+    
+    /**
+     * 缓存指标：命中、旧响应命中、未命中、合并等待、后台刷新次数、刷新失败次数，缓存条目数和占用字节数
+     */
+    public Map<String, Object> metrics() {
+        long hit = hits.sum() + staleHits.sum();
+        // 后台刷新的请求已按旧响应命中计入
+        long miss = misses.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("hits", hits.sum());
+        metrics.put("staleHits", staleHits.sum());
+        metrics.put("misses", misses.sum());
+        metrics.put("coalesced", coalesced.sum());
+        metrics.put("revalidations", revalidations.sum());
+        metrics.put("staleOnError", staleOnError.sum());
+        metrics.put("hitRate", hit + miss == 0 ? 0.0 : (double) hit / (hit + miss));
+        metrics.put("stores", stores.sum());
+        metrics.put("entries", cache.estimatedSize());
+        metrics.put("bytes", cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+        return metrics;
+    }
+    
+    @Override
+    public int getOrder() {
+        // 在认证过滤器之后、限流过滤器之前（命中缓存的请求不消耗限流令牌），写响应过滤器之前
+        return -90;
+    }
+    
+    /**
+     * 后台刷新使用的响应：状态码、响应头、Cookie保存在自身，不写出到客户端连接
+     */
+    private static class DetachedResponse extends ServerHttpResponseDecorator {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final MultiValueMap<String, ResponseCookie> cookies = new LinkedMultiValueMap<>();
+        private volatile Integer status;
+        private volatile boolean committed;
+        
+        DetachedResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+        
+        @Override
+        public boolean setStatusCode(HttpStatus status) {
+            this.status = status != null ? status.value() : null;
+            return true;
+        }
+        
+        @Override
+        public HttpStatus getStatusCode() {
+            return status != null ? HttpStatus.resolve(status) : null;
+        }
+        
+        @Override
+        public boolean setRawStatusCode(Integer status) {
+            this.status = status;
+            return true;
+        }
+        
+        @Override
+        public Integer getRawStatusCode() {
+            return status;
+        }
+        
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+        
+        @Override
+        public MultiValueMap<String, ResponseCookie> getCookies() {
+            return cookies;
+        }
+        
+        @Override
+        public void addCookie(ResponseCookie cookie) {
+            cookies.add(cookie.getName(), cookie);
+        }
+        
+        @Override
+        public void beforeCommit(Supplier<? extends Mono<Void>> action) {
+        }
+        
+        @Override
+        public boolean isCommitted() {
+            return committed;
+        }
+        
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return writeWith(Flux.from(body).concatMap(publisher -> Flux.<DataBuffer>from(publisher)));
+        }
+        
+        @Override
+        public Mono<Void> setComplete() {
+            return Mono.fromRunnable(() -> committed = true);
+        }
+    }
+    
+    /**
+     * 缓存的响应，body为堆外只读缓冲区
+     */
+    private static final class CachedResponse {
+        private final ByteBuffer body;
+        private final MediaType contentType;
+        private final String etag;
+        private final long ttlMillis;
+        private final long storedAt;
+        
+        CachedResponse(ByteBuffer body, MediaType contentType, String etag, long ttlMillis, long storedAt) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.ttlMillis = ttlMillis;
+            this.storedAt = storedAt;
+        }
+        
+        boolean isFresh(long now) {
+            return now - storedAt < ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.coffee.gateway.route;
+
+/**
+ * 认证策略
+ */
+public enum AuthPolicy {
+    
+    /**
+     * 公开接口，不校验令牌
+     */
+    PUBLIC,
+    
+    /**
+     * 必须携带有效令牌
+     */
+    REQUIRED,
+    
+    /**
+     * 临时跳过认证，使用模拟用户（仅用于测试）
+     */
+    MOCK_USER
+}
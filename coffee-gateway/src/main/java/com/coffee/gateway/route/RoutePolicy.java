@@ -0,0 +1,77 @@
+package com.coffee.gateway.route;
+
+/**
+ * 路径解析后的路由策略（不可变），由前缀树在构建时合并好，查找时直接返回
+ */
+public final class RoutePolicy {
+    
+    private final String prefix;
+    
+    private final AuthPolicy auth;
+    
+    private final String rateLimit;
+    
+    private final String routeId;
+    
+    private final String uri;
+    
+    private final long cacheTtlMillis;
+    
+    RoutePolicy(String prefix, AuthPolicy auth, String rateLimit, String routeId, String uri, long cacheTtlMillis) {
+        this.prefix = prefix;
+        this.auth = auth;
+        this.rateLimit = rateLimit;
+        this.routeId = routeId;
+        this.uri = uri;
+        this.cacheTtlMillis = cacheTtlMillis;
+    }
+    
+    /**
+     * 在当前策略上叠加规则中配置了的字段
+     */
+    RoutePolicy merge(RouteRule rule) {
+        return new RoutePolicy(
+                rule.getPrefix(),
+                rule.getAuth() != null ? rule.getAuth() : auth,
+                rule.getRateLimit() != null ? rule.getRateLimit() : rateLimit,
+                rule.getUri() != null ? rule.getRouteId() : routeId,
+                rule.getUri() != null ? rule.getUri() : uri,
+                rule.getCacheTtlMs() != null ? rule.getCacheTtlMs() : cacheTtlMillis);
+    }
+    
+    /**
+     * 命中的最长规则前缀
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+    
+    public AuthPolicy getAuth() {
+        return auth;
+    }
+    
+    public String getRateLimit() {
+        return rateLimit;
+    }
+    
+    public String getRouteId() {
+        return routeId;
+    }
+    
+    public String getUri() {
+        return uri;
+    }
+    
+    /**
+     * 网关响应缓存时间（毫秒），0表示不缓存
+     */
+    public long getCacheTtlMillis() {
+        return cacheTtlMillis;
+    }
+    
+    @Override
+    public String toString() {
+        return "RoutePolicy{prefix='" + prefix + "', auth=" + auth + ", rateLimit='" + rateLimit
+                + "', routeId='" + routeId + "', cacheTtlMillis=" + cacheTtlMillis + "}";
+    }
+}
@@ -0,0 +1,150 @@
+package com.coffee.gateway.route;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 路由策略注册表
+ *
+ * 启动时由 gateway.route-policy.rules 构建前缀树（未配置时使用内置规则），路径 → {认证策略, 限流策略, 下游服务}。
+ * 网关只接入了Nacos服务发现、没有接入配置中心，规则只在启动时加载，修改后需要重启网关。
+ */
+@Component
+public class RoutePolicyRegistry {
+    
+    private static final Logger log = LoggerFactory.getLogger(RoutePolicyRegistry.class);
+    
+    public static final String PROPERTY_PREFIX = "gateway.route-policy";
+    
+    /**
+     * 所有规则都未配置时的兜底策略
+     */
+    private static final RoutePolicy FALLBACK = new RoutePolicy("", AuthPolicy.REQUIRED, null, null, null, 0L);
+    
+    @Autowired
+    private Environment environment;
+    
+    private volatile List<RouteRule> rules;
+    
+    private volatile RoutePolicyTrie trie;
+    
+    @PostConstruct
+    public void init() {
+        load();
+        log.info("路由策略加载完成, 规则数: {}", rules.size());
+    }
+    
+    /**
+     * 查找路径的路由策略
+     */
+    public RoutePolicy match(String path) {
+        return trie.match(path);
+    }
+    
+    /**
+     * 当前生效的规则
+     */
+    public List<RouteRule> getRules() {
+        return rules;
+    }
+    
+    private void load() {
+        List<RouteRule> configured = Binder.get(environment)
+                .bind(PROPERTY_PREFIX + ".rules", Bindable.listOf(RouteRule.class))
+                .orElseGet(RoutePolicyRegistry::defaultRules);
+        trie = RoutePolicyTrie.build(configured, FALLBACK);
+        rules = Collections.unmodifiableList(new ArrayList<>(configured));
+    }
+    
+    /**
+     * 内置规则，与原有路由和认证白名单一致
+     */
+    private static List<RouteRule> defaultRules() {
+        List<RouteRule> rules = new ArrayList<>();
+        rules.add(RouteRule.builder().prefix("").auth(AuthPolicy.REQUIRED).rateLimit("default").build());
+        
+        // 下游路由
+        rules.add(route("/address/", "address-service", "lb://coffee-user-service"));
+        // TODO: 临时跳过用户优惠券接口和订单接口的认证，用于测试
+        rules.add(withAuth(rewrite("/user/coupons/", "user-coupon-service", "lb://coffee-coupon-service",
+                "/user/coupons(.*)", "/user/coupons$1"), AuthPolicy.MOCK_USER));
+        rules.add(route("/user/", "user-service", "lb://coffee-user-service"));
+        rules.add(withAuth(route("/product/", "product-service", "lb://coffee-product-service"), AuthPolicy.PUBLIC));
+        rules.add(withAuth(route("/order/", "order-service", "lb://coffee-order-service"), AuthPolicy.MOCK_USER));
+        rules.add(strip("/coupon/", "coupon-service", "lb://coffee-coupon-service"));
+        rules.add(strip("/cart/", "cart-service", "lb://coffee-cart-service"));
+        rules.add(strip("/ai/", "ai-service", "lb://coffee-ai-service"));
+        rules.add(strip("/statistics/", "statistics-service", "lb://coffee-statistics-service"));
+        rules.add(rewrite("/admin/products/", "admin-product-service", "lb://coffee-product-service",
+                "/admin/products(.*)", "/product/list$1"));
+        rules.add(rewrite("/admin/orders/", "admin-order-service", "lb://coffee-order-service",
+                "/admin/orders(.*)", "/order/list$1"));
+        rules.add(rewrite("/admin/users/", "admin-user-service", "lb://coffee-user-service",
+                "/admin/users(.*)", "/user/list$1"));
+        rules.add(rewrite("/admin/statistics/", "admin-statistics-service", "lb://coffee-statistics-service",
+                "/admin/statistics(.*)", "/statistics$1"));
+        rules.add(rewrite("/admin/coupons/", "admin-coupon-service", "lb://coffee-coupon-service",
+                "/admin/coupons(.*)", "/coupon$1"));
+        rules.add(rewrite("/admin/coupon-seckill/", "admin-seckill-service", "lb://coffee-coupon-service",
+                "/admin/coupon-seckill(.*)", "/coupon/seckill$1"));
+        rules.add(strip("/public/coupons/", "public-coupon-service", "lb://coffee-coupon-service"));
+        
+        // 登录、注册等公开接口
+        rules.add(login("/user/login"));
+        rules.add(login("/user/register"));
+        rules.add(login("/admin/login"));
+        rules.add(auth("/public/", AuthPolicy.PUBLIC));
+        
+        // 秒杀接口按用户限流（/coupon 路由去掉一段前缀后为 /coupon/seckill）
+        rules.add(RouteRule.builder().prefix("/coupon/coupon/seckill").rateLimit("seckill").build());
+        
+        // 匿名浏览的菜单、可领取优惠券接口在网关缓存响应
+        rules.add(cache("/product/list", 30000L));
+        rules.add(cache("/product/recommended", 30000L));
+        rules.add(cache("/product/hot", 30000L));
+        rules.add(cache("/product/categories", 60000L));
+        // 响应包含实时剩余库存，只做短时间合并
+        rules.add(cache("/public/coupons/available", 1000L));
+        return rules;
+    }
+    
+    private static RouteRule route(String prefix, String routeId, String uri) {
+        return RouteRule.builder().prefix(prefix).routeId(routeId).uri(uri).build();
+    }
+    
+    private static RouteRule strip(String prefix, String routeId, String uri) {
+        return RouteRule.builder().prefix(prefix).routeId(routeId).uri(uri).stripPrefix(1).build();
+    }
+    
+    private static RouteRule rewrite(String prefix, String routeId, String uri, String regex, String replacement) {
+        return RouteRule.builder().prefix(prefix).routeId(routeId).uri(uri)
+                .rewriteRegex(regex).rewriteReplacement(replacement).build();
+    }
+    
+    private static RouteRule auth(String prefix, AuthPolicy auth) {
+        return RouteRule.builder().prefix(prefix).auth(auth).build();
+    }
+    
+    private static RouteRule login(String prefix) {
+        return RouteRule.builder().prefix(prefix).auth(AuthPolicy.PUBLIC).rateLimit("login").build();
+    }
+    
+    private static RouteRule cache(String prefix, long ttlMillis) {
+        return RouteRule.builder().prefix(prefix).cacheTtlMs(ttlMillis).build();
+    }
+    
+    private static RouteRule withAuth(RouteRule rule, AuthPolicy auth) {
+        rule.setAuth(auth);
+        return rule;
+    }
+}
@@ -0,0 +1,96 @@
+package com.coffee.gateway.route;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 路径前缀树（构建后不可变）
+ *
+ * 按字符建树，每个节点保存已合并祖先规则的策略；子节点按字符排序存放在数组中，二分查找。
+ * 查找沿路径逐字符下行，返回走到的最深节点的策略，不创建任何对象。
+ */
+public final class RoutePolicyTrie {
+    
+    private final Node root;
+    
+    private RoutePolicyTrie(Node root) {
+        this.root = root;
+    }
+    
+    /**
+     * 由规则构建前缀树，前缀为空的规则作为全局默认
+     */
+    public static RoutePolicyTrie build(List<RouteRule> rules, RoutePolicy defaults) {
+        BuildNode root = new BuildNode();
+        for (RouteRule rule : rules) {
+            BuildNode node = root;
+            String prefix = prefixOf(rule);
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new BuildNode());
+            }
+            if (node.rule != null) {
+                throw new IllegalArgumentException("路由规则前缀重复: " + prefix);
+            }
+            node.rule = rule;
+        }
+        // 自上而下合并：长前缀在短前缀的策略上覆盖
+        return new RoutePolicyTrie(root.freeze(defaults));
+    }
+    
+    /**
+     * 查找路径的策略（最长前缀匹配）
+     */
+    public RoutePolicy match(String path) {
+        Node node = root;
+        for (int i = 0, n = path.length(); i < n; i++) {
+            Node next = node.child(path.charAt(i));
+            if (next == null) {
+                break;
+            }
+            node = next;
+        }
+        return node.policy;
+    }
+    
+    private static String prefixOf(RouteRule rule) {
+        return rule.getPrefix() != null ? rule.getPrefix() : "";
+    }
+    
+    private static final class Node {
+        private final char[] keys;
+        private final Node[] children;
+        private final RoutePolicy policy;
+        
+        Node(char[] keys, Node[] children, RoutePolicy policy) {
+            this.keys = keys;
+            this.children = children;
+            this.policy = policy;
+        }
+        
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+    
+    private static final class BuildNode {
+        private final TreeMap<Character, BuildNode> children = new TreeMap<>();
+        private RouteRule rule;
+        
+        Node freeze(RoutePolicy inherited) {
+            // 中间节点继承最近一个祖先规则的策略
+            RoutePolicy policy = rule != null ? inherited.merge(rule) : inherited;
+            char[] keys = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, BuildNode> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                nodes[i] = entry.getValue().freeze(policy);
+                i++;
+            }
+            return new Node(keys, nodes, policy);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.coffee.gateway.route;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 路由策略配置项（gateway.route-policy.rules）
+ *
+ * 按路径前缀（String.startsWith语义）匹配，最长前缀优先；未配置的字段继承更短前缀的值。
+ * 配置了 uri 的规则同时生成下游路由，路由路径为 prefix 去掉结尾 '/' 后加 /**。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RouteRule {
+    
+    /**
+     * 路径前缀
+     */
+    private String prefix;
+    
+    /**
+     * 认证策略
+     */
+    private AuthPolicy auth;
+    
+    /**
+     * 限流策略名称
+     */
+    private String rateLimit;
+    
+    /**
+     * 下游路由ID
+     */
+    private String routeId;
+    
+    /**
+     * 下游服务地址，如 lb://coffee-user-service
+     */
+    private String uri;
+    
+    /**
+     * 转发前去掉的路径段数
+     */
+    private Integer stripPrefix;
+    
+    /**
+     * 路径重写正则及替换值
+     */
+    private String rewriteRegex;
+    
+    private String rewriteReplacement;
+    
+    /**
+     * 网关响应缓存时间（毫秒），未配置或为0时不缓存；只对公开接口的GET请求生效
+     */
+    private Long cacheTtlMs;
+}
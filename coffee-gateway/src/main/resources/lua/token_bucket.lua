@@ -0,0 +1,46 @@
+-- 令牌桶限流Lua脚本
+-- 时间取自Redis服务器，各网关节点时钟不一致不影响计算
+-- 一次检查请求涉及的全部令牌桶（IP、用户），全部有令牌时才同时扣减，任一不足时都不扣减：
+-- 被IP限流拒绝的请求不会消耗用户的令牌，反之亦然
+-- KEYS[i]：令牌桶键（hash：tokens 剩余令牌数，ts 上次计算时间毫秒），同一次调用的键共用策略名hash tag
+-- ARGV[2i-1]：第i个桶每秒生成令牌数
+-- ARGV[2i]：第i个桶容量
+-- 返回值：与KEYS一一对应的等待毫秒数列表，全部为0表示放行，大于0为该桶距离下一个令牌的毫秒数
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local tokens = {}
+local waits = {}
+local allowed = true
+for i, key in ipairs(KEYS) do
+    local rate = tonumber(ARGV[i * 2 - 1])
+    local burst = tonumber(ARGV[i * 2])
+    local bucket = redis.call('HMGET', key, 'tokens', 'ts')
+    local current = tonumber(bucket[1])
+    local ts = tonumber(bucket[2])
+    if current == nil or ts == nil then
+        current = burst
+        ts = now
+    end
+    current = math.min(burst, current + math.max(0, now - ts) * rate / 1000)
+    tokens[i] = current
+    if current >= 1 then
+        waits[i] = 0
+    else
+        waits[i] = math.ceil((1 - current) * 1000 / rate)
+        allowed = false
+    end
+end
+
+for i, key in ipairs(KEYS) do
+    local rate = tonumber(ARGV[i * 2 - 1])
+    local burst = tonumber(ARGV[i * 2])
+    if allowed then
+        tokens[i] = tokens[i] - 1
+    end
+    redis.call('HSET', key, 'tokens', tostring(tokens[i]), 'ts', now)
+    -- 桶回满后即可删除，回满前按满桶处理结果相同
+    redis.call('PEXPIRE', key, math.ceil(burst * 1000 / rate) + 1000)
+end
+return waits
@@ -153,7 +153,8 @@ CREATE TABLE IF NOT EXISTS coupons (
     INDEX idx_type (type),
     INDEX idx_status (status),
     INDEX idx_start_time (start_time),
-    INDEX idx_end_time (end_time)
+    INDEX idx_end_time (end_time),
+    INDEX idx_create_time_id (create_time, id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='优惠券表';
 
 -- 用户优惠券表
@@ -161,15 +162,33 @@ CREATE TABLE IF NOT EXISTS user_coupons (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     user_id BIGINT NOT NULL COMMENT '用户ID',
     coupon_id BIGINT NOT NULL COMMENT '优惠券ID',
-    status TINYINT DEFAULT 0 COMMENT '状态 0-未使用 1-已使用 2-已过期',
+    status TINYINT DEFAULT 1 COMMENT '状态 1-未使用 2-已使用 3-已过期',
     used_time DATETIME COMMENT '使用时间',
     order_id BIGINT COMMENT '使用订单ID',
+    issue_key VARCHAR(64) NOT NULL DEFAULT '' COMMENT '发放键（秒杀发放为事件ID:序号，领取和批量发放为空，同一用户同一优惠券同一发放键只发一张）',
     create_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    UNIQUE KEY uk_user_coupon_issue (user_id, coupon_id, issue_key),
     INDEX idx_user_id (user_id),
     INDEX idx_coupon_id (coupon_id),
-    INDEX idx_status (status)
+    INDEX idx_status (status),
+    INDEX idx_coupon_status (coupon_id, status)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户优惠券表';
 
+-- 用户优惠券历史表（已使用、已过期且优惠券结束超过保留期的记录由过期清理任务归档）
+CREATE TABLE IF NOT EXISTS user_coupons_history (
+    id BIGINT PRIMARY KEY COMMENT '原用户优惠券ID',
+    user_id BIGINT NOT NULL COMMENT '用户ID',
+    coupon_id BIGINT NOT NULL COMMENT '优惠券ID',
+    status TINYINT COMMENT '状态',
+    used_time DATETIME COMMENT '使用时间',
+    order_id BIGINT COMMENT '使用订单ID',
+    issue_key VARCHAR(64) NOT NULL DEFAULT '' COMMENT '发放键',
+    create_time DATETIME COMMENT '创建时间',
+    archived_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '归档时间',
+    INDEX idx_user_id (user_id),
+    INDEX idx_coupon_id (coupon_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户优惠券历史表';
+
 -- 使用购物车数据库
 USE coffee_cart_db;
 
@@ -0,0 +1,103 @@
+-- 优惠券库表结构升级脚本（已有数据库执行，可重复执行）
+-- 新建数据库直接执行 create-databases.sql 和 seckill-tables.sql 即可，无需本脚本
+-- 执行方式: mysql -u root -p < database-scripts/migrate-coupon-schema.sql
+
+USE coffee_coupon_db;
+
+DELIMITER $$
+
+-- 列不存在时添加
+DROP PROCEDURE IF EXISTS add_column_if_absent$$
+CREATE PROCEDURE add_column_if_absent(IN tbl VARCHAR(64), IN col VARCHAR(64), IN definition VARCHAR(512))
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.TABLES
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = tbl)
+       AND NOT EXISTS (SELECT 1 FROM information_schema.COLUMNS
+                       WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = tbl AND COLUMN_NAME = col) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', tbl, ' ADD COLUMN ', col, ' ', definition);
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END IF;
+END$$
+
+-- 索引不存在时添加（definition 如 'INDEX idx_x (a, b)'、'UNIQUE KEY uk_x (a)'）
+DROP PROCEDURE IF EXISTS add_index_if_absent$$
+CREATE PROCEDURE add_index_if_absent(IN tbl VARCHAR(64), IN idx VARCHAR(64), IN definition VARCHAR(512))
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.TABLES
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = tbl)
+       AND NOT EXISTS (SELECT 1 FROM information_schema.STATISTICS
+                       WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = tbl AND INDEX_NAME = idx) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', tbl, ' ADD ', definition);
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END IF;
+END$$
+
+-- 添加唯一键前，为已有的重复发放记录补唯一发放键（保留每组最早的一条），避免唯一键创建失败
+DROP PROCEDURE IF EXISTS dedupe_user_coupon_issue_key$$
+CREATE PROCEDURE dedupe_user_coupon_issue_key()
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.STATISTICS
+                   WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'user_coupons'
+                     AND INDEX_NAME = 'uk_user_coupon_issue') THEN
+        UPDATE user_coupons uc
+        JOIN (SELECT user_id, coupon_id, issue_key, MIN(id) AS keep_id
+              FROM user_coupons
+              GROUP BY user_id, coupon_id, issue_key
+              HAVING COUNT(*) > 1) dup
+          ON uc.user_id = dup.user_id AND uc.coupon_id = dup.coupon_id
+         AND uc.issue_key = dup.issue_key AND uc.id <> dup.keep_id
+        SET uc.issue_key = CONCAT('legacy:', uc.id);
+    END IF;
+END$$
+
+DELIMITER ;
+
+-- 优惠券表
+CALL add_index_if_absent('coupons', 'idx_create_time_id', 'INDEX idx_create_time_id (create_time, id)');
+
+-- 用户优惠券表：状态 1-未使用 2-已使用 3-已过期，默认未使用
+ALTER TABLE user_coupons MODIFY COLUMN status TINYINT DEFAULT 1 COMMENT '状态 1-未使用 2-已使用 3-已过期';
+CALL add_column_if_absent('user_coupons', 'issue_key',
+    'VARCHAR(64) NOT NULL DEFAULT '''' COMMENT ''发放键（秒杀发放为事件ID:序号，领取和批量发放为空，同一用户同一优惠券同一发放键只发一张）'' AFTER order_id');
+CALL dedupe_user_coupon_issue_key();
+CALL add_index_if_absent('user_coupons', 'uk_user_coupon_issue', 'UNIQUE KEY uk_user_coupon_issue (user_id, coupon_id, issue_key)');
+CALL add_index_if_absent('user_coupons', 'idx_coupon_status', 'INDEX idx_coupon_status (coupon_id, status)');
+
+-- 用户优惠券历史表
+CREATE TABLE IF NOT EXISTS user_coupons_history (
+    id BIGINT PRIMARY KEY COMMENT '原用户优惠券ID',
+    user_id BIGINT NOT NULL COMMENT '用户ID',
+    coupon_id BIGINT NOT NULL COMMENT '优惠券ID',
+    status TINYINT COMMENT '状态',
+    used_time DATETIME COMMENT '使用时间',
+    order_id BIGINT COMMENT '使用订单ID',
+    issue_key VARCHAR(64) NOT NULL DEFAULT '' COMMENT '发放键',
+    create_time DATETIME COMMENT '创建时间',
+    archived_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '归档时间',
+    INDEX idx_user_id (user_id),
+    INDEX idx_coupon_id (coupon_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户优惠券历史表';
+CALL add_column_if_absent('user_coupons_history', 'issue_key',
+    'VARCHAR(64) NOT NULL DEFAULT '''' COMMENT ''发放键'' AFTER order_id');
+
+-- 秒杀活动表、秒杀参与记录表（表不存在时跳过，由 seckill-tables.sql 创建）
+CALL add_index_if_absent('coupon_seckill_activity', 'idx_create_time_id', 'INDEX idx_create_time_id (create_time, id)');
+CALL add_column_if_absent('coupon_seckill_participant', 'event_id',
+    'VARCHAR(64) COMMENT ''秒杀事件ID（Redis Stream记录ID，重放去重）'' AFTER user_coupon_id');
+CALL add_index_if_absent('coupon_seckill_participant', 'uk_event_id', 'UNIQUE KEY uk_event_id (event_id)');
+
+-- 优惠券使用数量回写事件登记表
+CREATE TABLE IF NOT EXISTS coupon_used_count_event (
+    event_id VARCHAR(64) PRIMARY KEY COMMENT '秒杀事件ID（Redis Stream记录ID）',
+    coupon_id BIGINT NOT NULL COMMENT '优惠券ID',
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '回写时间',
+    INDEX idx_create_time (create_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='优惠券使用数量回写事件登记表';
+
+DROP PROCEDURE IF EXISTS add_column_if_absent;
+DROP PROCEDURE IF EXISTS add_index_if_absent;
+DROP PROCEDURE IF EXISTS dedupe_user_coupon_issue_key;
@@ -14,7 +14,8 @@ CREATE TABLE IF NOT EXISTS coupon_seckill_activity (
     INDEX idx_coupon_id (coupon_id),
     INDEX idx_status (status),
     INDEX idx_start_time (start_time),
-    INDEX idx_end_time (end_time)
+    INDEX idx_end_time (end_time),
+    INDEX idx_create_time_id (create_time, id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='优惠券秒杀活动表';
 
 -- 创建秒杀参与记录表
@@ -25,10 +26,18 @@ CREATE TABLE IF NOT EXISTS coupon_seckill_participant (
     quantity INT NOT NULL COMMENT '参与数量',
     status TINYINT DEFAULT 0 COMMENT '状态:0-待发放,1-已发放,2-已取消',
     user_coupon_id BIGINT COMMENT '用户优惠券ID',
+    event_id VARCHAR(64) COMMENT '秒杀事件ID（Redis Stream记录ID，重放去重）',
     create_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '参与时间',
+    UNIQUE KEY uk_event_id (event_id),
     INDEX idx_activity_id (activity_id),
     INDEX idx_user_id (user_id),
     INDEX idx_status (status)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='秒杀参与记录表';
 
-
+-- 创建优惠券使用数量回写事件登记表（秒杀事件重放去重）
+CREATE TABLE IF NOT EXISTS coupon_used_count_event (
+    event_id VARCHAR(64) PRIMARY KEY COMMENT '秒杀事件ID（Redis Stream记录ID）',
+    coupon_id BIGINT NOT NULL COMMENT '优惠券ID',
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '回写时间',
+    INDEX idx_create_time (create_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='优惠券使用数量回写事件登记表';